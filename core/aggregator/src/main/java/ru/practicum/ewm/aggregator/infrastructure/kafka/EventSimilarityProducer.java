@@ -24,7 +24,9 @@ public class EventSimilarityProducer {
     public void sendEventSimilarity(EventSimilarityAvro eventSimilarity) {
         log.info("Sending event similarity data to Kafka topic '{}': {}", eventSimilarityTopic, eventSimilarity);
 
-        kafkaTemplate.send(eventSimilarityTopic, eventSimilarity)
+        // Keying by pair keeps the scores of a pair in one partition, so consumers see them in order
+        String key = eventSimilarity.getEventA() + ":" + eventSimilarity.getEventB();
+        kafkaTemplate.send(eventSimilarityTopic, key, eventSimilarity)
             .whenComplete((result, ex) -> {
                 if (ex == null) {
                     log.info("Successfully sent event similarity data to offset {}",
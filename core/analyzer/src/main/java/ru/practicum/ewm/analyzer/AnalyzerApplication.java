@@ -4,11 +4,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import ru.practicum.ewm.analyzer.application.config.IngestionProperties;
 import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
 
 @SpringBootApplication
 @EnableJpaAuditing
-@EnableConfigurationProperties(RecommendationProperties.class)
+@EnableConfigurationProperties({RecommendationProperties.class, IngestionProperties.class})
 public class AnalyzerApplication {
 
     public static void main(String[] args) {
@@ -1,15 +1,21 @@
 package ru.practicum.ewm.analyzer.application;
 
 import jakarta.transaction.Transactional;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.EventRatingRepository;
 import ru.practicum.ewm.analyzer.domain.EventSimilarity;
-import ru.practicum.ewm.analyzer.domain.EventSimilarityRepository;
-import ru.practicum.ewm.analyzer.domain.UserActionType;
-import ru.practicum.ewm.analyzer.domain.UserInteraction;
+import ru.practicum.ewm.analyzer.domain.UserAction;
 import ru.practicum.ewm.analyzer.domain.UserInteractionRepository;
 
 @Service
@@ -18,36 +24,68 @@ import ru.practicum.ewm.analyzer.domain.UserInteractionRepository;
 public class IngestionService {
 
     private final UserInteractionRepository interactionRepository;
-    private final EventSimilarityRepository similarityRepository;
+    private final EventRatingRepository ratingRepository;
+    private final SimilarityWriteBehindBuffer similarityBuffer;
+    private final SimilarityPruner similarityPruner;
+    private final PredictionCache predictionCache;
+    private final PredictionInvalidationPublisher invalidationPublisher;
 
     private final RecommendationProperties properties;
 
+    /**
+     * Records a batch of user actions in a single transaction, in the given order.
+     * <p>
+     * An event's rating grows only when an action raises a user's maximum weight for the event,
+     * and by exactly that much, so it always equals the sum of the users' maximum weights.
+     */
     @Transactional
-    public void processUserAction(long userId, long eventId, UserActionType actionType) {
-        log.info("Processing user action: userId={}, eventId={}, actionType={}", userId, eventId, actionType);
-        UserInteraction interaction = new UserInteraction();
-        interaction.setUserId(userId);
-        interaction.setEventId(eventId);
-        interaction.setWeight(properties.getActionWeight(actionType));
-        interactionRepository.save(interaction);
-        log.info("Saved user interaction for userId {} and eventId {} with weight {}.", userId, eventId, interaction.getWeight());
+    public void processUserActions(List<UserAction> actions) {
+        Map<Long, Double> ratingIncrements = new HashMap<>();
+        for (UserAction action : actions) {
+            double weight = properties.getActionWeight(action.actionType());
+            double increment = interactionRepository.upsert(action.userId(), action.eventId(), weight,
+                action.timestamp());
+            if (increment > 0) {
+                ratingIncrements.merge(action.eventId(), increment, Double::sum);
+            }
+        }
+        ratingRepository.addToRatings(ratingIncrements);
+
+        // Predictions recomputed before the commit would still see the old interactions
+        Set<Long> users = actions.stream().map(UserAction::userId).collect(Collectors.toSet());
+        // Delivered to the other instances with the commit
+        invalidationPublisher.publishUsers(users);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                users.forEach(predictionCache::invalidateUser);
+            }
+        });
+        log.info("Saved {} user interactions, {} event ratings changed.", actions.size(), ratingIncrements.size());
     }
 
-    @Transactional
-    public void processEventSimilarity(long eventA, long eventB, double similarityScore) {
-        log.info("Processing event similarity: eventA={}, eventB={}, score={}", eventA, eventB, similarityScore);
-        EventSimilarity similarity = new EventSimilarity();
-        similarity.setEventA(eventA);
-        similarity.setEventB(eventB);
-        similarity.setScore(similarityScore);
-        Optional<EventSimilarity> oldSimilarityData = similarityRepository.findByEventAAndEventB(eventA, eventB);
-        if (oldSimilarityData.isPresent()) {
-            log.debug("Updating existing similarity for event pair ({}, {}). Old score: {}, New score: {}",
-                eventA, eventB, oldSimilarityData.get().getScore(), similarityScore);
-            similarity.setId(oldSimilarityData.get().getId());
+    /**
+     * Records the latest similarity scores of event pairs. The scores are written behind, see
+     * {@link SimilarityWriteBehindBuffer}. The {@link SimilarityIndex} reads them from Kafka by itself.
+     *
+     * @param onPersisted Called once the scores have been written to the database.
+     */
+    public void processEventSimilarities(List<EventSimilarity> similarities, Runnable onPersisted) {
+        log.debug("Processing {} event similarities", similarities.size());
+        SimilarityPruner.Filtered filtered = similarityPruner.filterTopNeighbours(similarities);
+        similarityBuffer.addAll(filtered.retained(), filtered.belowTopNeighbours(), () -> {
+            predictionCache.onSimilaritiesChanged(similarities);
+            invalidationPublisher.publishEvents(touchedEvents(similarities));
+            onPersisted.run();
+        });
+    }
+
+    private static Set<Long> touchedEvents(List<EventSimilarity> similarities) {
+        Set<Long> events = new HashSet<>(similarities.size() * 2);
+        for (EventSimilarity similarity : similarities) {
+            events.add(similarity.getEventA());
+            events.add(similarity.getEventB());
         }
-        similarityRepository.save(similarity);
-        log.info("{} event similarity for event pair ({}, {}) with score {}.",
-            oldSimilarityData.isPresent() ? "Updated" : "Saved", eventA, eventB, similarityScore);
+        return events;
     }
-}
\ No newline at end of file
+}
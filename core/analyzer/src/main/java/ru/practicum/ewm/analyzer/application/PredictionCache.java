@@ -0,0 +1,308 @@
+package ru.practicum.ewm.analyzer.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+/**
+ * Bounded cache of user predictions keyed by user and result size.
+ * <p>
+ * A user's entries are dropped as soon as one of their actions is committed, by whichever instance
+ * consumed it, see {@link PredictionInvalidationPublisher}. An entry also
+ * remembers the recent events its predictions were based on; when the similarities of one of those
+ * events change, the entry is marked stale and recomputed on its next read. Entries older than
+ * {@code maxAge} are recomputed as well.
+ * <p>
+ * Every invalidation takes a number from a shared sequence and records it for its user, or for its
+ * events, in a fixed table of stripes. A computation notes the sequence before it starts and does
+ * not store its result if its user or one of its basis events has been invalidated since, so the
+ * cache never keeps predictions computed from data older than the last invalidation. Stripes shared
+ * by several users or events only cost a few uncached results. When reads may
+ * run on a lagging replica, predictions computed within {@code replicaSettleTime} of a user's action
+ * are not cached either.
+ */
+@Component
+@Slf4j
+public class PredictionCache {
+
+    private static final double EVICTION_TARGET = 0.9;
+    private static final int EPOCH_STRIPE_BITS = 12;
+
+    private final RecommendationProperties.PredictionCache properties;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    // Recent event -> users whose cached predictions are based on it
+    private final ConcurrentHashMap<Long, Set<Long>> usersByEvent = new ConcurrentHashMap<>();
+    // User -> result sizes cached for them
+    private final ConcurrentHashMap<Long, Set<Integer>> sizesByUser = new ConcurrentHashMap<>();
+    // User -> time until which their replica reads may predate their last action
+    private final ConcurrentHashMap<Long, Long> settlingUntil = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    // Sequence number of the latest invalidation
+    private final AtomicLong invalidations = new AtomicLong();
+    // Latest invalidation per stripe of users and of events, and of everything
+    private final AtomicLongArray userEpochs = new AtomicLongArray(1 << EPOCH_STRIPE_BITS);
+    private final AtomicLongArray eventEpochs = new AtomicLongArray(1 << EPOCH_STRIPE_BITS);
+    private final AtomicLong clearEpoch = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter staleReads;
+    private final Counter actionInvalidations;
+    private final Counter similarityInvalidations;
+    private final Timer hitAge;
+
+    public PredictionCache(RecommendationProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties.getPredictionCache();
+
+        this.hits = gets(meterRegistry, "hit");
+        this.misses = gets(meterRegistry, "miss");
+        this.staleReads = gets(meterRegistry, "stale");
+        this.actionInvalidations = invalidations(meterRegistry, "user-action");
+        this.similarityInvalidations = invalidations(meterRegistry, "similarity");
+        this.hitAge = Timer.builder("analyzer.prediction-cache.hit-age")
+            .description("Age of the cached predictions served")
+            .register(meterRegistry);
+        Gauge.builder("analyzer.prediction-cache.size", entries, Map::size)
+            .description("Cached user predictions")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Returns the cached predictions, computing and caching them if they are missing, stale or too old.
+     */
+    public List<Recommendation> get(long userId, int maxResults, Supplier<Prediction> loader) {
+        if (!isEnabled()) {
+            return loader.get().predictions();
+        }
+        Key key = new Key(userId, maxResults);
+        long now = System.nanoTime();
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.prediction != null) {
+            long age = now - entry.computedAt;
+            if (!entry.stale && age < properties.getMaxAge().toNanos()) {
+                hits.increment();
+                hitAge.record(age, TimeUnit.NANOSECONDS);
+                return entry.prediction.predictions();
+            }
+            staleReads.increment();
+        } else {
+            misses.increment();
+        }
+
+        Long settled = settlingUntil.get(userId);
+        if (settled != null) {
+            if (now - settled < 0) {
+                return loader.get().predictions();
+            }
+            settlingUntil.remove(userId, settled);
+        }
+
+        long startEpoch = invalidations.get();
+        Entry pending = new Entry(null, now);
+        entries.put(key, pending);
+
+        Prediction prediction = loader.get();
+        // Registered before the epochs are checked: an invalidation that records its epoch after the
+        // check finds the entry through the indexes and removes it, pending or not
+        sizesByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(maxResults);
+        for (Long eventId : prediction.basisEvents()) {
+            usersByEvent.computeIfAbsent(eventId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        if (invalidatedSince(startEpoch, userId, prediction.basisEvents())) {
+            entries.remove(key, pending);
+            return prediction.predictions();
+        }
+        Entry loaded = new Entry(prediction, now);
+        if (entries.replace(key, pending, loaded) && entries.size() > properties.getMaxEntries()) {
+            evict();
+        }
+        return prediction.predictions();
+    }
+
+    /**
+     * Drops the cached predictions of a user. Call it once the user's action is committed.
+     */
+    public void invalidateUser(long userId) {
+        long settleTime = properties.getReplicaSettleTime().toNanos();
+        if (isEnabled() && settleTime > 0) {
+            settlingUntil.put(userId, System.nanoTime() + settleTime);
+        }
+        recordEpoch(userEpochs, userId);
+        Set<Integer> sizes = sizesByUser.remove(userId);
+        if (sizes == null) {
+            return;
+        }
+        for (Integer size : sizes) {
+            if (entries.remove(new Key(userId, size)) != null) {
+                actionInvalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Marks stale the predictions based on events whose similarities have changed. Call it once the
+     * similarities are persisted.
+     */
+    public void onSimilaritiesChanged(Collection<EventSimilarity> similarities) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (EventSimilarity similarity : similarities) {
+            markStale(similarity.getEventA());
+            markStale(similarity.getEventB());
+        }
+    }
+
+    /**
+     * Marks stale the predictions based on the given events, whose similarities have changed.
+     */
+    public void onEventsChanged(Collection<Long> eventIds) {
+        if (!isEnabled()) {
+            return;
+        }
+        eventIds.forEach(this::markStale);
+    }
+
+    /**
+     * Drops everything, for when invalidations may have been missed.
+     */
+    public void invalidateAll() {
+        clearEpoch.accumulateAndGet(invalidations.incrementAndGet(), Math::max);
+        entries.clear();
+        usersByEvent.clear();
+        sizesByUser.clear();
+    }
+
+    private void markStale(long eventId) {
+        recordEpoch(eventEpochs, eventId);
+        Set<Long> users = usersByEvent.remove(eventId);
+        if (users == null) {
+            return;
+        }
+        for (Long userId : users) {
+            Set<Integer> sizes = sizesByUser.get(userId);
+            if (sizes == null) {
+                continue;
+            }
+            for (Integer size : sizes) {
+                Entry entry = entries.get(new Key(userId, size));
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.prediction == null) {
+                    // A computation in flight may have read the old similarities
+                    entries.remove(new Key(userId, size), entry);
+                } else if (!entry.stale) {
+                    entry.stale = true;
+                    similarityInvalidations.increment();
+                }
+            }
+        }
+    }
+
+    private void recordEpoch(AtomicLongArray epochs, long id) {
+        epochs.accumulateAndGet(stripe(id), invalidations.incrementAndGet(), Math::max);
+    }
+
+    private boolean invalidatedSince(long epoch, long userId, Collection<Long> basisEvents) {
+        if (clearEpoch.get() > epoch || userEpochs.get(stripe(userId)) > epoch) {
+            return true;
+        }
+        for (Long eventId : basisEvents) {
+            if (eventEpochs.get(stripe(eventId)) > epoch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int stripe(long id) {
+        // Fibonacci hashing, consecutive IDs land far apart
+        return (int) (id * 0x9E3779B97F4A7C15L >>> (Long.SIZE - EPOCH_STRIPE_BITS));
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            long maxAge = properties.getMaxAge().toNanos();
+            entries.values().removeIf(entry -> entry.stale || now - entry.computedAt >= maxAge);
+
+            int target = (int) (properties.getMaxEntries() * EVICTION_TARGET);
+            Iterator<Key> keys = entries.keySet().iterator();
+            while (entries.size() > target && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+            // Index entries of evicted users are harmless and go away with their next invalidation
+            sizesByUser.entrySet().removeIf(user -> user.getValue().stream()
+                .noneMatch(size -> entries.containsKey(new Key(user.getKey(), size))));
+            settlingUntil.values().removeIf(until -> now - until >= 0);
+        } finally {
+            evicting.set(false);
+        }
+        log.debug("Prediction cache evicted down to {} entries", entries.size());
+    }
+
+    private static Counter gets(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("analyzer.prediction-cache.gets")
+            .description("Prediction cache reads by result")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private static Counter invalidations(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("analyzer.prediction-cache.invalidations")
+            .description("Cached predictions invalidated by cause")
+            .tag("cause", cause)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Computed predictions together with the recent events they were based on.
+     */
+    public record Prediction(List<Recommendation> predictions, Collection<Long> basisEvents) {
+    }
+
+    private record Key(long userId, int maxResults) {
+    }
+
+    private static final class Entry {
+
+        // null while the predictions are being computed
+        private final Prediction prediction;
+        private final long computedAt;
+        private volatile boolean stale;
+
+        private Entry(Prediction prediction, long computedAt) {
+            this.prediction = prediction;
+            this.computedAt = computedAt;
+        }
+    }
+}
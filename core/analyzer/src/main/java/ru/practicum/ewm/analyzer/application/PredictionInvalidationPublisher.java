@@ -0,0 +1,23 @@
+package ru.practicum.ewm.analyzer.application;
+
+import java.util.Collection;
+
+/**
+ * Spreads the invalidations of the {@link PredictionCache} to the other analyzer instances, whose
+ * caches do not see the actions and similarities consumed here.
+ */
+public interface PredictionInvalidationPublisher {
+
+    /**
+     * Announces that the given users have new actions. Inside a transaction, the announcement is
+     * delivered only if and once it commits.
+     */
+    void publishUsers(Collection<Long> userIds);
+
+    /**
+     * Announces that the similarities of the given events have been persisted. Runs after the
+     * similarities are committed, so a failure is logged rather than thrown; the other instances
+     * then serve the affected predictions until their {@code maxAge}.
+     */
+    void publishEvents(Collection<Long> eventIds);
+}
@@ -1,17 +1,28 @@
 package ru.practicum.ewm.analyzer.application;
 
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.EventNeighboursRepository;
+import ru.practicum.ewm.analyzer.domain.EventRatingRepository;
 import ru.practicum.ewm.analyzer.domain.EventSimilarityRepository;
+import ru.practicum.ewm.analyzer.domain.PredictionRepository;
 import ru.practicum.ewm.analyzer.domain.Recommendation;
 import ru.practicum.ewm.analyzer.domain.UserInteractionRepository;
+import ru.practicum.ewm.analyzer.domain.UserPredictions;
 
 @Service
 @Slf4j
@@ -20,6 +31,12 @@ public class RecommendationsService {
 
     private final EventSimilarityRepository similarityRepository;
     private final UserInteractionRepository interactionRepository;
+    private final EventRatingRepository ratingRepository;
+    private final PredictionRepository predictionRepository;
+    private final EventNeighboursRepository neighboursRepository;
+    private final SimilarityIndex similarityIndex;
+    private final PredictionCache predictionCache;
+    private final PlatformTransactionManager transactionManager;
 
     private final RecommendationProperties properties;
 
@@ -30,7 +47,11 @@ public class RecommendationsService {
         List<Long> interactedEvents = interactionRepository.findInteractedEvents(userId);
         log.debug("User {} has interacted with {} events.", userId, interactedEvents.size());
 
-        List<Recommendation> similarEvents = similarityRepository.findTopSimilarExcluding(eventId, interactedEvents, maxResults);
+        Optional<List<Recommendation>> indexed = similarityIndex.findTopSimilarExcluding(eventId,
+            new HashSet<>(interactedEvents), maxResults);
+        List<Recommendation> similarEvents = indexed.isPresent()
+            ? indexed.get()
+            : similarityRepository.findTopSimilarExcluding(eventId, interactedEvents, maxResults);
         log.info("Found {} similar events for event {} excluding user {}'s interactions.", similarEvents.size(), eventId, userId);
         return similarEvents;
     }
@@ -39,15 +60,30 @@ public class RecommendationsService {
     public List<Recommendation> getInteractionsCount(Collection<Long> eventIds) {
         log.info("Finding interaction counts for {} events.", eventIds.size());
 
-        List<Recommendation> interactionCounts = interactionRepository.findInteractionsCount(eventIds);
+        List<Recommendation> interactionCounts = ratingRepository.findRatings(eventIds);
         log.info("Retrieved interaction counts for {} events.", interactionCounts.size());
         return interactionCounts;
     }
 
-    @Transactional(readOnly = true)
     public List<Recommendation> getUserPredictions(long userId, int maxResults) {
+        return predictionCache.get(userId, maxResults, () -> {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            return transaction.execute(status -> computeUserPredictions(userId, maxResults));
+        });
+    }
+
+    private PredictionCache.Prediction computeUserPredictions(long userId, int maxResults) {
         log.info("Generating top {} event predictions for user {}.", maxResults, userId);
 
+        if (properties.getPredictionMode() == RecommendationProperties.PredictionMode.SINGLE_QUERY) {
+            UserPredictions result = predictionRepository.predictForUser(userId,
+                properties.getMaxRecentEventsForPrediction(), properties.getMaxNeighboursForPrediction(), maxResults);
+            log.info("Finished generating {} event predictions for user {} in a single query.",
+                result.predictions().size(), userId);
+            return new PredictionCache.Prediction(result.predictions(), result.recentEvents());
+        }
+
         // Select candidates for suggestion
         List<Long> interactedEvents = interactionRepository.findInteractedEvents(userId);
         List<Long> recentlyInteractedEvents = interactionRepository.findRecentlyInteractedEvents(
@@ -55,14 +91,15 @@ public class RecommendationsService {
         log.debug("User {} recently interacted with {} events (max {}).", userId,
             recentlyInteractedEvents.size(), properties.getMaxRecentEventsForPrediction());
 
-        List<Long> similarEvents = similarityRepository.findTopSimilarToSet(
-            recentlyInteractedEvents, maxResults);
+        List<Long> similarEvents = properties.getNeighbourLists().isEnabled()
+            ? findCandidatesFromNeighbourLists(recentlyInteractedEvents, maxResults)
+            : similarityRepository.findTopSimilarToSet(recentlyInteractedEvents, maxResults);
         log.debug("Found {} candidate events similar to user {}'s recently interacted events (based on {} events, max {} results).",
             similarEvents.size(), userId, recentlyInteractedEvents.size(), maxResults);
 
         if (similarEvents.isEmpty()) {
             log.info("No similar events found as candidates for user {}. Returning empty predictions.", userId);
-            return List.of();
+            return new PredictionCache.Prediction(List.of(), recentlyInteractedEvents);
         }
 
         // Find neighbours for candidates
@@ -102,6 +139,26 @@ public class RecommendationsService {
         }).toList();
 
         log.info("Finished generating {} event predictions for user {}.", predictions.size(), userId);
-        return predictions;
+        return new PredictionCache.Prediction(predictions, recentlyInteractedEvents);
+    }
+
+    // Ranks like findTopSimilarToSet, by average similarity, over the stored neighbours of the recent events
+    private List<Long> findCandidatesFromNeighbourLists(List<Long> recentlyInteractedEvents, int maxResults) {
+        Set<Long> recent = new HashSet<>(recentlyInteractedEvents);
+        Map<Long, double[]> sumsAndCounts = new HashMap<>();
+        for (List<Recommendation> neighbours : neighboursRepository.findNeighbours(recent).values()) {
+            for (Recommendation neighbour : neighbours) {
+                if (!recent.contains(neighbour.getEventId())) {
+                    double[] sumAndCount = sumsAndCounts.computeIfAbsent(neighbour.getEventId(), id -> new double[2]);
+                    sumAndCount[0] += neighbour.getScore();
+                    sumAndCount[1]++;
+                }
+            }
+        }
+        return sumsAndCounts.entrySet().stream()
+            .sorted(Comparator.comparingDouble(entry -> -entry.getValue()[0] / entry.getValue()[1]))
+            .limit(maxResults)
+            .map(Map.Entry::getKey)
+            .toList();
     }
-}
\ No newline at end of file
+}
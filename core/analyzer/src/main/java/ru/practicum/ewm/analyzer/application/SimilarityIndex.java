@@ -0,0 +1,239 @@
+package ru.practicum.ewm.analyzer.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.EventSimilarityRepository;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+/**
+ * In-process index of the most similar neighbours of every event.
+ * <p>
+ * Each event keeps at most {@code maxNeighbours} neighbours, sorted by score, in two parallel
+ * primitive arrays. The arrays are never modified: an update builds new ones and swaps them in,
+ * so lookups read a consistent list without locking.
+ * <p>
+ * Every instance feeds its index with the similarities of all topic partitions, not only those its
+ * ingestion listener is assigned. Once the partitions are assigned and the consumer has been moved
+ * back by the replay window, the index bootstraps from the database; until then it does not
+ * answer. The replayed similarities cover the scores still buffered by any instance when the
+ * snapshot is read, and a pair already updated from the topic keeps that score.
+ * <p>
+ * A list that has overflowed is not necessarily the true top of the event: a kept neighbour whose
+ * score fell may now rank below one that was dropped. The list therefore remembers the best score
+ * it has ever dropped. Every neighbour missing from it scores at most that much, since a raised
+ * score puts the neighbour back, so a result is exact only if it is full and its last score still
+ * reaches the dropped one. Any other lookup is left to the database.
+ */
+@Component
+@Slf4j
+public class SimilarityIndex {
+
+    private static final double NONE_DROPPED = Double.NEGATIVE_INFINITY;
+
+    private final EventSimilarityRepository similarityRepository;
+    private final RecommendationProperties.SimilarityIndex properties;
+
+    private final ConcurrentHashMap<Long, Neighbours> neighbours = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private final Counter hits;
+    private final Counter fallbacks;
+
+    public SimilarityIndex(EventSimilarityRepository similarityRepository, RecommendationProperties properties,
+        MeterRegistry meterRegistry) {
+        this.similarityRepository = similarityRepository;
+        this.properties = properties.getSimilarityIndex();
+
+        this.hits = Counter.builder("analyzer.similarity-index.lookups")
+            .description("Similar event lookups by result")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.fallbacks = Counter.builder("analyzer.similarity-index.lookups")
+            .description("Similar event lookups by result")
+            .tag("result", "fallback")
+            .register(meterRegistry);
+        Gauge.builder("analyzer.similarity-index.events", neighbours, ConcurrentHashMap::size)
+            .description("Events with neighbours in the similarity index")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Loads the stored similarities in the background. Call it once, after the topic consumer has
+     * been positioned at the start of the replay window.
+     */
+    public void bootstrap() {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread loader = new Thread(() -> {
+            long started = System.nanoTime();
+            try {
+                long[] loaded = new long[1];
+                similarityRepository.scanAll(similarity -> {
+                    merge(similarity.getEventA(), similarity.getEventB(), similarity.getScore());
+                    loaded[0]++;
+                });
+                ready = true;
+                log.info("Similarity index bootstrapped with {} similarities of {} events in {} ms", loaded[0],
+                    neighbours.size(), (System.nanoTime() - started) / 1_000_000);
+            } catch (RuntimeException e) {
+                log.error("Failed to bootstrap the similarity index, similar events stay served by the database", e);
+            }
+        }, "similarity-index-bootstrap");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Records the latest score of an event pair.
+     */
+    public void update(long eventA, long eventB, double score) {
+        if (!isEnabled()) {
+            return;
+        }
+        int max = properties.getMaxNeighbours();
+        neighbours.compute(eventA, (id, current) -> Neighbours.with(current, eventB, score, max));
+        neighbours.compute(eventB, (id, current) -> Neighbours.with(current, eventA, score, max));
+    }
+
+    /**
+     * Looks up the most similar events from memory.
+     *
+     * @param eventId The event to find similar events for.
+     * @param excludedEvents Events that must not be returned.
+     * @param maxResults The maximum number of similar events.
+     * @return The similar events sorted by score, or an empty {@link Optional} if the index cannot
+     *         answer exactly and the caller has to ask the database.
+     */
+    public Optional<List<Recommendation>> findTopSimilarExcluding(long eventId, Set<Long> excludedEvents,
+        int maxResults) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        Neighbours list = neighbours.get(eventId);
+        if (list == null) {
+            hits.increment();
+            return Optional.of(List.of());
+        }
+
+        List<Recommendation> result = new ArrayList<>(Math.min(maxResults, list.ids.length));
+        for (int i = 0; i < list.ids.length && result.size() < maxResults; i++) {
+            if (!excludedEvents.contains(list.ids[i])) {
+                result.add(new Recommendation(list.ids[i], list.scores[i]));
+            }
+        }
+        boolean exact = list.droppedScore == NONE_DROPPED || result.size() == maxResults
+            && (result.isEmpty() || result.getLast().getScore() >= list.droppedScore);
+        if (!exact) {
+            fallbacks.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(result);
+    }
+
+    /**
+     * Tells whether a score would leave an event pair outside the {@code n} best neighbours of both of
+     * its events. Answers {@code false} whenever the index cannot tell.
+     */
+    public boolean ranksBelowTopN(long eventA, long eventB, double score, int n) {
+        if (!ready || n > properties.getMaxNeighbours()) {
+            return false;
+        }
+        return belowTopN(neighbours.get(eventA), eventB, score, n)
+            && belowTopN(neighbours.get(eventB), eventA, score, n);
+    }
+
+    private static boolean belowTopN(Neighbours list, long neighbour, double score, int n) {
+        if (list == null || list.ids.length < n || score >= list.scores[n - 1]) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (list.ids[i] == neighbour) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Bootstrap must not overwrite scores already updated by consumed similarities
+    private void merge(long eventA, long eventB, double score) {
+        int max = properties.getMaxNeighbours();
+        neighbours.compute(eventA, (id, current) -> current != null && current.contains(eventB)
+            ? current : Neighbours.with(current, eventB, score, max));
+        neighbours.compute(eventB, (id, current) -> current != null && current.contains(eventA)
+            ? current : Neighbours.with(current, eventA, score, max));
+    }
+
+    /**
+     * Immutable neighbour list sorted by descending score.
+     */
+    private static final class Neighbours {
+
+        private final long[] ids;
+        private final double[] scores;
+        // Best score of a neighbour ever dropped to respect the bound
+        private final double droppedScore;
+
+        private Neighbours(long[] ids, double[] scores, double droppedScore) {
+            this.ids = ids;
+            this.scores = scores;
+            this.droppedScore = droppedScore;
+        }
+
+        boolean contains(long id) {
+            for (long neighbour : ids) {
+                if (neighbour == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static Neighbours with(Neighbours current, long id, double score, int max) {
+            long[] oldIds = current == null ? new long[0] : current.ids;
+            double[] oldScores = current == null ? new double[0] : current.scores;
+            double droppedScore = current == null ? NONE_DROPPED : current.droppedScore;
+
+            long[] ids = new long[oldIds.length + 1];
+            double[] scores = new double[oldIds.length + 1];
+            int size = 0;
+            boolean inserted = false;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] == id) {
+                    continue;
+                }
+                if (!inserted && score > oldScores[i]) {
+                    ids[size] = id;
+                    scores[size++] = score;
+                    inserted = true;
+                }
+                ids[size] = oldIds[i];
+                scores[size++] = oldScores[i];
+            }
+            if (!inserted) {
+                ids[size] = id;
+                scores[size++] = score;
+            }
+            if (size > max) {
+                droppedScore = Math.max(droppedScore, scores[max]);
+                size = max;
+            }
+            return new Neighbours(Arrays.copyOf(ids, size), Arrays.copyOf(scores, size), droppedScore);
+        }
+    }
+}
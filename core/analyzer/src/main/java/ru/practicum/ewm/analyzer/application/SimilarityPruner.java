@@ -0,0 +1,125 @@
+package ru.practicum.ewm.analyzer.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.analyzer.application.config.IngestionProperties;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
+import ru.practicum.ewm.analyzer.domain.EventSimilarityRepository;
+
+/**
+ * Keeps the stored similarities down to the {@code maxNeighbours} best neighbours of every event,
+ * so the table grows with the number of events rather than the number of pairs.
+ * <p>
+ * A periodic compaction deletes the pairs that rank below the best neighbours of both their events.
+ * Between compactions, incoming pairs that the similarity index already ranks below the best
+ * neighbours of both their events are deleted instead of written. For a pair that is not stored the
+ * delete finds nothing and writes nothing; a stored pair whose score fell that low does not keep its
+ * old, higher score until the next compaction. A pair is written again once its score brings it
+ * back among the best.
+ */
+@Component
+@Slf4j
+public class SimilarityPruner implements InitializingBean, DisposableBean {
+
+    private final EventSimilarityRepository similarityRepository;
+    private final SimilarityIndex similarityIndex;
+    private final IngestionProperties.SimilarityPruning properties;
+
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "similarity-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter filteredCounter;
+    private final Counter prunedCounter;
+    private final Timer compactionTimer;
+
+    public SimilarityPruner(EventSimilarityRepository similarityRepository, SimilarityIndex similarityIndex,
+        IngestionProperties properties, MeterRegistry meterRegistry) {
+        this.similarityRepository = similarityRepository;
+        this.similarityIndex = similarityIndex;
+        this.properties = properties.getSimilarityPruning();
+
+        this.filteredCounter = Counter.builder("analyzer.similarity.pruning.filtered")
+            .description("Incoming event pairs deleted instead of written because they rank below the best neighbours")
+            .register(meterRegistry);
+        this.prunedCounter = Counter.builder("analyzer.similarity.pruning.deleted")
+            .description("Event pairs deleted by compactions")
+            .register(meterRegistry);
+        this.compactionTimer = Timer.builder("analyzer.similarity.pruning.compaction")
+            .description("Time taken by a compaction")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long interval = properties.getCompactionInterval().toMillis();
+        compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        compactor.shutdownNow();
+    }
+
+    /**
+     * Separates the similarities that would not rank among the best neighbours of either of their
+     * events from those to be written.
+     */
+    public Filtered filterTopNeighbours(List<EventSimilarity> similarities) {
+        if (!properties.isEnabled() || !properties.isFilterOnWrite()) {
+            return new Filtered(similarities, List.of());
+        }
+        int maxNeighbours = properties.getMaxNeighbours();
+        Map<Boolean, List<EventSimilarity>> below = similarities.stream()
+            .collect(Collectors.partitioningBy(similarity -> similarityIndex.ranksBelowTopN(similarity.getEventA(),
+                similarity.getEventB(), similarity.getScore(), maxNeighbours)));
+        filteredCounter.increment(below.get(true).size());
+        return new Filtered(below.get(false), below.get(true));
+    }
+
+    /**
+     * Deletes the stored pairs that rank below the best neighbours of both their events.
+     *
+     * @return The number of deleted pairs.
+     */
+    public long compact() {
+        long started = System.nanoTime();
+        long deleted = similarityRepository.pruneToTopNeighbours(properties.getMaxNeighbours());
+        compactionTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        prunedCounter.increment(deleted);
+        log.info("Similarity compaction deleted {} event pairs in {} ms", deleted,
+            (System.nanoTime() - started) / 1_000_000);
+        return deleted;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Similarity compaction failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param retained The similarities to write.
+     * @param belowTopNeighbours The pairs to delete, should they be stored.
+     */
+    public record Filtered(List<EventSimilarity> retained, List<EventSimilarity> belowTopNeighbours) {
+    }
+}
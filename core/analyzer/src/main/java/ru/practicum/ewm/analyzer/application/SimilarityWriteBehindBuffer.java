@@ -0,0 +1,246 @@
+package ru.practicum.ewm.analyzer.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.analyzer.application.config.IngestionProperties;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.EventNeighboursRepository;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
+import ru.practicum.ewm.analyzer.domain.EventSimilarityRepository;
+
+/**
+ * Write-behind stage for event similarities.
+ * <p>
+ * Only the latest score of every event pair is kept in memory, so a hot pair rewritten by many
+ * messages costs a single row write per flush. The buffer is flushed every {@code flushInterval}
+ * by a background thread, or by the adding thread as soon as it holds {@code maxPairs} pairs, which
+ * also throttles the consumer when the database falls behind. If that flush fails, {@link #addAll}
+ * throws with the scores still buffered, and the listener's error handler redelivers the records
+ * after a back-off instead of skipping them.
+ * <p>
+ * Pairs can also be buffered for deletion; a deletion and a score of the same pair replace each
+ * other like two scores do. Every flush also rebuilds the stored neighbour lists of the events it
+ * wrote or deleted, when neighbour lists are enabled, in the same transaction as the writes.
+ * <p>
+ * Every added batch of scores carries a completion callback, which runs only after the flush that
+ * persisted it, so the caller can commit the source offsets then. When a flush fails, its pairs go
+ * back into the buffer, unless a newer score has arrived meanwhile, and are retried with the next
+ * flush. A callback that throws is logged and counted, and the other callbacks still run.
+ */
+@Component
+@Slf4j
+public class SimilarityWriteBehindBuffer implements InitializingBean, DisposableBean {
+
+    private final EventSimilarityRepository similarityRepository;
+    private final EventNeighboursRepository neighboursRepository;
+    private final IngestionProperties.SimilarityBuffer properties;
+    private final RecommendationProperties.NeighbourLists neighbourLists;
+    private final TransactionTemplate transaction;
+
+    // Buffered in place of a score for the pairs to delete
+    private static final double DELETED = Double.NaN;
+
+    // Guarded by bufferLock
+    private final Object bufferLock = new Object();
+    private Map<PairKey, Double> scores = new HashMap<>();
+    private List<Runnable> callbacks = new ArrayList<>();
+
+    // Only one flush writes at a time
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "similarity-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter receivedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedFlushesCounter;
+    private final Counter failedCallbacksCounter;
+    private final Timer flushTimer;
+
+    public SimilarityWriteBehindBuffer(EventSimilarityRepository similarityRepository,
+        EventNeighboursRepository neighboursRepository, IngestionProperties properties,
+        RecommendationProperties recommendationProperties, PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry) {
+        this.similarityRepository = similarityRepository;
+        this.neighboursRepository = neighboursRepository;
+        this.properties = properties.getSimilarityBuffer();
+        this.neighbourLists = recommendationProperties.getNeighbourLists();
+        this.transaction = new TransactionTemplate(transactionManager);
+
+        this.receivedCounter = Counter.builder("analyzer.similarity.buffer.received")
+            .description("Event similarity scores added to the write-behind buffer")
+            .register(meterRegistry);
+        this.writtenCounter = Counter.builder("analyzer.similarity.buffer.written")
+            .description("Event pair rows written or deleted by buffer flushes")
+            .register(meterRegistry);
+        this.failedFlushesCounter = Counter.builder("analyzer.similarity.buffer.failed-flushes")
+            .description("Buffer flushes that failed and were retried")
+            .register(meterRegistry);
+        this.failedCallbacksCounter = Counter.builder("analyzer.similarity.buffer.failed-callbacks")
+            .description("Completion callbacks that threw after their scores were written")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("analyzer.similarity.buffer.flush")
+            .description("Time taken to write a buffer flush to the database")
+            .register(meterRegistry);
+        Gauge.builder("analyzer.similarity.buffer.pending", this, SimilarityWriteBehindBuffer::pendingPairs)
+            .description("Distinct event pairs waiting to be written")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * Buffers the latest similarity scores of event pairs, and the pairs to delete. Later scores of a
+     * pair in the list win.
+     *
+     * @param similarities The similarities, each with the smaller event ID as {@code eventA}.
+     * @param deletions The pairs to delete, each with the smaller event ID as {@code eventA}; their
+     *        scores are ignored.
+     * @param onPersisted Called once all the scores and deletions, or newer ones for the same pairs,
+     *        have been written.
+     * @throws RuntimeException if the buffer was full and could not be flushed; the scores and the
+     *         callback stay buffered, so adding the same records again is harmless.
+     */
+    public void addAll(List<EventSimilarity> similarities, List<EventSimilarity> deletions, Runnable onPersisted) {
+        int pending;
+        synchronized (bufferLock) {
+            for (EventSimilarity similarity : similarities) {
+                scores.put(new PairKey(similarity.getEventA(), similarity.getEventB()), similarity.getScore());
+            }
+            for (EventSimilarity deletion : deletions) {
+                scores.put(new PairKey(deletion.getEventA(), deletion.getEventB()), DELETED);
+            }
+            callbacks.add(onPersisted);
+            pending = scores.size();
+        }
+        receivedCounter.increment(similarities.size() + deletions.size());
+        if (pending >= properties.getMaxPairs()) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all buffered scores and then runs the callbacks of the scores written.
+     *
+     * @throws RuntimeException if the write failed; the scores stay buffered.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<PairKey, Double> batch;
+            List<Runnable> batchCallbacks;
+            synchronized (bufferLock) {
+                if (callbacks.isEmpty()) {
+                    return;
+                }
+                batch = scores;
+                batchCallbacks = callbacks;
+                scores = new HashMap<>();
+                callbacks = new ArrayList<>();
+            }
+
+            try {
+                flushTimer.record(() -> transaction.executeWithoutResult(status -> {
+                    similarityRepository.upsertAll(toSimilarities(batch, false), properties.getJdbcBatchSize());
+                    similarityRepository.deleteAllPairs(toSimilarities(batch, true), properties.getJdbcBatchSize());
+                    if (neighbourLists.isEnabled()) {
+                        neighboursRepository.refresh(touchedEvents(batch), neighbourLists.getMaxNeighbours());
+                    }
+                }));
+            } catch (RuntimeException e) {
+                failedFlushesCounter.increment();
+                synchronized (bufferLock) {
+                    batch.forEach(scores::putIfAbsent);
+                    batchCallbacks.addAll(callbacks);
+                    callbacks = batchCallbacks;
+                }
+                throw e;
+            }
+
+            writtenCounter.increment(batch.size());
+            // The scores are committed: a failing callback must neither skip the others nor fail the flush
+            for (Runnable callback : batchCallbacks) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    failedCallbacksCounter.increment();
+                    log.error("Completion callback of flushed event similarities failed", e);
+                }
+            }
+            log.debug("Flushed {} event pairs for {} similarity batches", batch.size(), batchCallbacks.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush buffered event similarities, will retry: {}", e.getMessage());
+        }
+    }
+
+    private int pendingPairs() {
+        synchronized (bufferLock) {
+            return scores.size();
+        }
+    }
+
+    private static Set<Long> touchedEvents(Map<PairKey, Double> batch) {
+        Set<Long> events = new HashSet<>(batch.size() * 2);
+        for (PairKey pair : batch.keySet()) {
+            events.add(pair.eventA());
+            events.add(pair.eventB());
+        }
+        return events;
+    }
+
+    private static List<EventSimilarity> toSimilarities(Map<PairKey, Double> batch, boolean deleted) {
+        List<EventSimilarity> similarities = new ArrayList<>();
+        batch.forEach((pair, score) -> {
+            if (Double.isNaN(score) == deleted) {
+                similarities.add(new EventSimilarity(null, pair.eventA(), pair.eventB(), score));
+            }
+        });
+        // A stable key order keeps concurrent writers from deadlocking on the same rows
+        similarities.sort(Comparator.comparingLong(EventSimilarity::getEventA)
+            .thenComparingLong(EventSimilarity::getEventB));
+        return similarities;
+    }
+
+    private record PairKey(long eventA, long eventB) {
+    }
+}
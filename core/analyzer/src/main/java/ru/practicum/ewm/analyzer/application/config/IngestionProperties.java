@@ -0,0 +1,82 @@
+package ru.practicum.ewm.analyzer.application.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "ingestion")
+@Getter
+@Setter
+public class IngestionProperties {
+
+    private Listener actionListener = new Listener();
+    private SimilarityListener similarityListener = new SimilarityListener();
+    private SimilarityBuffer similarityBuffer = new SimilarityBuffer();
+    private SimilarityPruning similarityPruning = new SimilarityPruning();
+
+    @Getter
+    @Setter
+    public static class Listener {
+        /**
+         * Number of consumer threads. Each partition is consumed by a single thread, so records with the
+         * same key are processed in order; threads beyond the partition count stay idle.
+         */
+        private int concurrency = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class SimilarityListener extends Listener {
+        /**
+         * First delay before records whose scores could not be buffered are redelivered. Records are
+         * retried until they succeed, never skipped, since their offsets are committed only after the
+         * scores have been written.
+         */
+        private Duration retryInitialBackoff = Duration.ofMillis(500);
+        /**
+         * Upper bound of the exponentially growing delay between redeliveries.
+         */
+        private Duration retryMaxBackoff = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class SimilarityBuffer {
+        /**
+         * Number of distinct event pairs buffered before the consuming thread flushes them itself.
+         */
+        private int maxPairs = 5_000;
+        /**
+         * How often the buffered pairs are flushed when the threshold is not reached.
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+        /**
+         * Number of rows per JDBC batch.
+         */
+        private int jdbcBatchSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class SimilarityPruning {
+        /**
+         * Whether only the best neighbours of every event are kept in the database.
+         */
+        private boolean enabled = false;
+        /**
+         * Neighbours kept per event. A pair survives while it ranks among the best neighbours of either
+         * of its events, so this must not be lower than the neighbours or results any query reads.
+         */
+        private int maxNeighbours = 50;
+        /**
+         * How often pairs that dropped out of the best neighbours are deleted.
+         */
+        private Duration compactionInterval = Duration.ofHours(1);
+        /**
+         * Whether new scores below the best neighbours of both their events delete the pair instead of
+         * writing it. Requires the similarity index to hold at least {@code maxNeighbours} neighbours.
+         */
+        private boolean filterOnWrite = true;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.practicum.ewm.analyzer.application.config;
 
+import java.time.Duration;
 import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
@@ -14,8 +15,87 @@ public class RecommendationProperties {
 
     private int maxRecentEventsForPrediction = 10;
     private int maxNeighboursForPrediction = 10;
+    private PredictionMode predictionMode = PredictionMode.STEPWISE;
+
+    private SimilarityIndex similarityIndex = new SimilarityIndex();
+
+    private NeighbourLists neighbourLists = new NeighbourLists();
+
+    private PredictionCache predictionCache = new PredictionCache();
 
     public Double getActionWeight(UserActionType actionType) {
         return this.actionWeights.get(actionType.name());
     }
+
+    public enum PredictionMode {
+        /**
+         * Candidates, neighbours and weights are fetched by separate queries and scored in the service.
+         */
+        STEPWISE,
+        /**
+         * Candidates are selected and scored by one statement that returns the final predictions only.
+         */
+        SINGLE_QUERY
+    }
+
+    @Getter
+    @Setter
+    public static class SimilarityIndex {
+        /**
+         * Whether similar events are served from the in-memory neighbour index.
+         */
+        private boolean enabled = false;
+        /**
+         * Neighbours kept per event; lookups excluding more of them fall back to the database.
+         */
+        private int maxNeighbours = 200;
+        /**
+         * How far back the index reads the topic when it starts, so that the consumed similarities
+         * overlap the database snapshot it bootstraps from. Must exceed the similarity buffer's flush
+         * interval plus the lag of the ingestion listener.
+         */
+        private Duration replayWindow = Duration.ofMinutes(1);
+    }
+
+    @Getter
+    @Setter
+    public static class NeighbourLists {
+        /**
+         * Whether prediction candidates are generated from the stored per-event neighbour lists. The
+         * lists are only kept up to date while enabled, so enabling it again after a while starts
+         * from stale lists; truncate {@code event_neighbours} and rerun the backfill of
+         * {@code V3__event_neighbours.sql} first.
+         */
+        private boolean enabled = false;
+        /**
+         * Neighbours stored per event. Candidates only come from these, so it bounds how far down
+         * the neighbours of a recent event a prediction can reach.
+         */
+        private int maxNeighbours = 50;
+    }
+
+    @Getter
+    @Setter
+    public static class PredictionCache {
+        /**
+         * Whether user predictions are cached between the user's actions.
+         */
+        private boolean enabled = false;
+        private int maxEntries = 100_000;
+        /**
+         * Upper bound on the age of served predictions, whatever invalidations were missed.
+         */
+        private Duration maxAge = Duration.ofMinutes(5);
+        /**
+         * How long after a user's action their predictions are computed without being cached. Set it
+         * to the replica lag tolerated for reads plus the lag check interval when reads run on replicas.
+         */
+        private Duration replicaSettleTime = Duration.ZERO;
+        /**
+         * Whether invalidations are broadcast to the caches of the other analyzer instances. Without
+         * it, an instance only drops predictions for the actions and similarities it consumes itself,
+         * and other instances serve them until {@code maxAge}.
+         */
+        private boolean broadcastInvalidations = true;
+    }
 }
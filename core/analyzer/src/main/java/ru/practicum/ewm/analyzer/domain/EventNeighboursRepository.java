@@ -0,0 +1,27 @@
+package ru.practicum.ewm.analyzer.domain;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface EventNeighboursRepository {
+
+    /**
+     * Rebuilds the stored neighbour lists of the given events from their current similarities.
+     * Must run in the transaction that changed the similarities, so that concurrent refreshes of the
+     * same events cannot overwrite a list with one read before their changes were committed.
+     *
+     * @param eventIds The events whose similarities have changed.
+     * @param maxNeighbours The maximum number of neighbours kept per event.
+     */
+    void refresh(Collection<Long> eventIds, int maxNeighbours);
+
+    /**
+     * Retrieves the stored neighbour lists of the given events.
+     *
+     * @param eventIds A {@link Collection} of event IDs for which to retrieve neighbours.
+     * @return A {@link Map} where keys are event IDs and values are their neighbours sorted by
+     *         descending similarity; events without neighbours are absent.
+     */
+    Map<Long, List<Recommendation>> findNeighbours(Collection<Long> eventIds);
+}
@@ -0,0 +1,25 @@
+package ru.practicum.ewm.analyzer.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "event_ratings")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventRating {
+
+    @Id
+    @Column(name = "event_id")
+    private Long eventId;
+    @Column(nullable = false)
+    private Double rating; // The sum of the users' maximum interaction weights with the event
+}
@@ -0,0 +1,24 @@
+package ru.practicum.ewm.analyzer.domain;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface EventRatingRepository {
+
+    /**
+     * Adds the given increments to the ratings of events, creating the missing ratings.
+     *
+     * @param increments Event IDs mapped to the amounts to add to their ratings.
+     */
+    void addToRatings(Map<Long, Double> increments);
+
+    /**
+     * Retrieves the ratings (sums of the users' maximum interaction weights) of the given events.
+     *
+     * @param eventIds A {@link Collection} of event IDs for which to retrieve ratings.
+     * @return A {@link List} of {@link Recommendation} objects, where each object contains an event ID
+     *         and its rating; events without interactions are absent.
+     */
+    List<Recommendation> findRatings(Collection<Long> eventIds);
+}
@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
@@ -13,8 +14,13 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
-@Table(name = "event_similarities", uniqueConstraints = @UniqueConstraint(columnNames = {"event_a",
-    "event_b"}))
+@Table(name = "event_similarities",
+    uniqueConstraints = @UniqueConstraint(name = "uk_event_similarities_pair", columnNames = {"event_a",
+        "event_b"}),
+    indexes = {
+        @Index(name = "idx_event_similarities_a_score", columnList = "event_a, score DESC"),
+        @Index(name = "idx_event_similarities_b_score", columnList = "event_b, score DESC")
+    })
 @Getter
 @Setter
 @NoArgsConstructor
@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface EventSimilarityRepository {
 
@@ -27,6 +28,39 @@ public interface EventSimilarityRepository {
      */
     EventSimilarity save(EventSimilarity similarity);
 
+    /**
+     * Inserts the given similarities or overwrites the scores of the event pairs that already exist,
+     * in JDBC batches.
+     *
+     * @param similarities The similarities to write; their IDs are ignored.
+     * @param batchSize The number of rows per JDBC batch.
+     */
+    void upsertAll(Collection<EventSimilarity> similarities, int batchSize);
+
+    /**
+     * Deletes the given event pairs where they are stored, in JDBC batches.
+     *
+     * @param similarities The pairs to delete; their IDs and scores are ignored.
+     * @param batchSize The number of rows per JDBC batch.
+     */
+    void deleteAllPairs(Collection<EventSimilarity> similarities, int batchSize);
+
+    /**
+     * Streams all stored similarities to the given action without loading them into memory at once.
+     *
+     * @param action Receives every similarity; the passed object may be reused between calls.
+     */
+    void scanAll(Consumer<EventSimilarity> action);
+
+    /**
+     * Deletes the pairs that rank below the {@code maxNeighbours} most similar neighbours of both of
+     * their events. Does nothing if another instance is already pruning.
+     *
+     * @param maxNeighbours The number of best neighbours kept for every event.
+     * @return The number of deleted pairs.
+     */
+    long pruneToTopNeighbours(int maxNeighbours);
+
     /**
      * Retrieves a specified number of events that are most similar to a target event,
      * excluding any events provided in the exclusion list. The results are ordered by similarity score.
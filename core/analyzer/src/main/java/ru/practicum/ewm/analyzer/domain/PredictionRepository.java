@@ -0,0 +1,22 @@
+package ru.practicum.ewm.analyzer.domain;
+
+public interface PredictionRepository {
+
+    /**
+     * Predicts the user's interest in the events most similar to their recent events, in a single
+     * database call.
+     * <p>
+     * Candidates are the events with the highest average similarity to the user's
+     * {@code maxRecentEvents} most recent events, excluding these events. The score of a candidate
+     * is the average of the user's interaction weights with its {@code maxNeighbours} most similar
+     * interacted events, weighted by similarity; a candidate without such neighbours scores
+     * {@code 0}.
+     *
+     * @param userId The ID of the user to predict for.
+     * @param maxRecentEvents The number of most recent interactions the candidates are selected from.
+     * @param maxNeighbours The maximum number of interacted events each prediction is based on.
+     * @param maxResults The maximum number of candidates.
+     * @return The predictions, ordered by the candidates' average similarity, and the recent events.
+     */
+    UserPredictions predictForUser(long userId, int maxRecentEvents, int maxNeighbours, int maxResults);
+}
@@ -0,0 +1,6 @@
+package ru.practicum.ewm.analyzer.domain;
+
+import java.time.Instant;
+
+public record UserAction(long userId, long eventId, UserActionType actionType, Instant timestamp) {
+}
@@ -6,17 +6,24 @@ import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import java.time.Instant;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.CreationTimestamp;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 @Entity
-@Table(name = "user_interactions")
+@Table(name = "user_interactions",
+    uniqueConstraints = @UniqueConstraint(name = "uk_user_interactions_user_event", columnNames = {"user_id",
+        "event_id"}),
+    indexes = {
+        @Index(name = "idx_user_interactions_user_time", columnList = "user_id, interaction_time DESC"),
+        @Index(name = "idx_user_interactions_event_user", columnList = "event_id, user_id")
+    })
 @Getter
 @Setter
 @NoArgsConstructor
@@ -32,8 +39,7 @@ public class UserInteraction {
     @Column(name = "event_id", nullable = false)
     private Long eventId;
     @Column(nullable = false)
-    private Double weight;
-    @CreationTimestamp
-    @Column(nullable = false, updatable = false)
-    private Instant interactionTime;
+    private Double weight; // The maximum weight of the user's actions on the event
+    @Column(nullable = false)
+    private Instant interactionTime; // The time of the user's latest action on the event
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package ru.practicum.ewm.analyzer.domain;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -7,12 +8,16 @@ import java.util.Map;
 public interface UserInteractionRepository {
 
     /**
-     * Saves a new user interaction record or updates an existing one.
+     * Records a user action on an event. There is a single interaction per user and event: it keeps
+     * the maximum weight of all the actions and the time of the latest one.
      *
-     * @param interaction The {@link UserInteraction} object to be saved.
-     * @return The saved {@link UserInteraction} object, possibly with generated IDs or updated fields.
+     * @param userId The ID of the user who performed the action.
+     * @param eventId The ID of the event the action was performed on.
+     * @param weight The weight of the action.
+     * @param interactionTime The time the action was performed.
+     * @return How much the interaction's weight has increased, {@code 0} if the action did not raise it.
      */
-    UserInteraction save(UserInteraction interaction);
+    double upsert(long userId, long eventId, double weight, Instant interactionTime);
 
     /**
      * Retrieves a list of event IDs that a specific user has interacted with.
@@ -22,16 +27,6 @@ public interface UserInteractionRepository {
      */
     List<Long> findInteractedEvents(long userId);
 
-    /**
-     * Retrieves a list of aggregated interaction counts (or sums of maximum interaction weights)
-     * for a given collection of events across all users.
-     *
-     * @param eventIds A {@link Collection} of event IDs for which to retrieve interaction counts.
-     * @return A {@link List} of {@link Recommendation} objects, where each object contains
-     *         an event ID and its corresponding aggregated interaction count or sum.
-     */
-    List<Recommendation> findInteractionsCount(Collection<Long> eventIds);
-
     /**
      * Retrieves a list of event IDs that a specific user has most recently interacted with,
      * up to a maximum number of results. The events are ordered by recency of interaction.
@@ -43,7 +38,7 @@ public interface UserInteractionRepository {
     List<Long> findRecentlyInteractedEvents(long userId, int maxResults);
 
     /**
-     * Retrieves the maximum interaction weights for a given set of events specific to a particular user.
+     * Retrieves the interaction weights for a given set of events specific to a particular user.
      * This method returns a map where keys are event IDs and values are the corresponding
      * maximum interaction weights for the specified user with those events.
      *
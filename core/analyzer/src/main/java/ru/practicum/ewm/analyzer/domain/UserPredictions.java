@@ -0,0 +1,10 @@
+package ru.practicum.ewm.analyzer.domain;
+
+import java.util.List;
+
+/**
+ * Predicted scores of the candidate events for a user, in candidate order, together with the
+ * user's recent events the candidates were selected from.
+ */
+public record UserPredictions(List<Recommendation> predictions, List<Long> recentEvents) {
+}
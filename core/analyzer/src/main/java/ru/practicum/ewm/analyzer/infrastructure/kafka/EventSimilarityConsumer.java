@@ -1,10 +1,13 @@
 package ru.practicum.ewm.analyzer.infrastructure.kafka;
 
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 import ru.practicum.ewm.analyzer.application.IngestionService;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
 import ru.practicum.ewm.stats.kafka.EventSimilarityAvro;
 
 @Component
@@ -19,9 +22,14 @@ public class EventSimilarityConsumer {
         containerFactory = "similarityContainerFactory",
         topics = "${kafka.topic.events-similarity}"
     )
-    public void consumeSimilarity(EventSimilarityAvro similarity) {
-        log.info("Received similarity data for events {} and {}", similarity.getEventA(), similarity.getEventB());
-        ingestionService.processEventSimilarity(similarity.getEventA(), similarity.getEventB(), similarity.getScore());
+    public void consumeSimilarities(List<EventSimilarityAvro> similarities, Acknowledgment acknowledgment) {
+        log.debug("Received batch of {} event similarities", similarities.size());
+        // The offsets are committed only once the scores have been flushed to the database
+        ingestionService.processEventSimilarities(similarities.stream()
+                .map(similarity -> new EventSimilarity(null, similarity.getEventA(), similarity.getEventB(),
+                    similarity.getScore()))
+                .toList(),
+            acknowledgment::acknowledge);
     }
 
 }
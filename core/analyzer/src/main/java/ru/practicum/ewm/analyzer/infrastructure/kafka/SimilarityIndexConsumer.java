@@ -0,0 +1,67 @@
+package ru.practicum.ewm.analyzer.infrastructure.kafka;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.analyzer.application.SimilarityIndex;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.stats.kafka.EventSimilarityAvro;
+
+/**
+ * Feeds the {@link SimilarityIndex} of this instance with the similarities of all partitions.
+ * <p>
+ * The ingestion listener shares its group with the other analyzer instances and only sees the
+ * partitions assigned to it, so the index reads the topic in a group of its own. It never commits
+ * offsets, so it leaves nothing behind on the broker.
+ * <p>
+ * On its first assignment the consumer seeks back by the replay window and only then starts the
+ * bootstrap from the database. The consumed stream thus overlaps the snapshot: a score produced
+ * before the assignment but not yet flushed to the database is still read from the topic.
+ */
+@Component
+@Slf4j
+public class SimilarityIndexConsumer implements ConsumerSeekAware {
+
+    private final SimilarityIndex similarityIndex;
+    private final Duration replayWindow;
+    private final AtomicBoolean bootstrapped = new AtomicBoolean();
+
+    public SimilarityIndexConsumer(SimilarityIndex similarityIndex, RecommendationProperties properties) {
+        this.similarityIndex = similarityIndex;
+        this.replayWindow = properties.getSimilarityIndex().getReplayWindow();
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (assignments.isEmpty() || !bootstrapped.compareAndSet(false, true)) {
+            return;
+        }
+        long replayFrom = System.currentTimeMillis() - replayWindow.toMillis();
+        callback.seekToTimestamp(assignments.keySet(), replayFrom);
+        log.info("Similarity index replays {} partitions from {}, then bootstraps", assignments.size(),
+            Instant.ofEpochMilli(replayFrom));
+        similarityIndex.bootstrap();
+    }
+
+    @KafkaListener(
+        id = "similarity-index-listener",
+        containerFactory = "similarityIndexContainerFactory",
+        topics = "${kafka.topic.events-similarity}",
+        groupId = "${spring.kafka.consumer.group-id}-similarity-index-${random.uuid}",
+        autoStartup = "${recommendations.similarity-index.enabled:true}",
+        properties = "auto.offset.reset=latest"
+    )
+    public void consumeSimilarities(List<EventSimilarityAvro> similarities) {
+        log.trace("Indexing batch of {} event similarities", similarities.size());
+        for (EventSimilarityAvro similarity : similarities) {
+            similarityIndex.update(similarity.getEventA(), similarity.getEventB(), similarity.getScore());
+        }
+    }
+}
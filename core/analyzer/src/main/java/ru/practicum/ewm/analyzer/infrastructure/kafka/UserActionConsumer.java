@@ -1,10 +1,12 @@
 package ru.practicum.ewm.analyzer.infrastructure.kafka;
 
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 import ru.practicum.ewm.analyzer.application.IngestionService;
+import ru.practicum.ewm.analyzer.domain.UserAction;
 import ru.practicum.ewm.analyzer.domain.UserActionType;
 import ru.practicum.ewm.stats.kafka.UserActionAvro;
 
@@ -20,9 +22,12 @@ public class UserActionConsumer {
         containerFactory = "actionContainerFactory",
         topics = "${kafka.topic.user-actions}"
     )
-    public void consumeAction(UserActionAvro action) {
-        log.info("Received action from user {} on event {}", action.getUserId(), action.getEventId());
-        ingestionService.processUserAction(action.getUserId(), action.getEventId(), UserActionType.valueOf(action.getActionType().name()));
+    public void consumeActions(List<UserActionAvro> actions) {
+        log.info("Received batch of {} user actions", actions.size());
+        ingestionService.processUserActions(actions.stream()
+            .map(action -> new UserAction(action.getUserId(), action.getEventId(),
+                UserActionType.valueOf(action.getActionType().name()), action.getTimestamp()))
+            .toList());
     }
 
 }
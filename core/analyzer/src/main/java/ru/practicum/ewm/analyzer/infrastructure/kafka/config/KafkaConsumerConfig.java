@@ -1,5 +1,6 @@
 package ru.practicum.ewm.analyzer.infrastructure.kafka.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.HashMap;
 import java.util.Map;
 import lombok.RequiredArgsConstructor;
@@ -12,6 +13,11 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.ExponentialBackOff;
+import ru.practicum.ewm.analyzer.application.config.IngestionProperties;
 import ru.practicum.ewm.stats.common.kafka.EventSimilarityAvroDeserializer;
 import ru.practicum.ewm.stats.common.kafka.UserActionAvroDeserializer;
 import ru.practicum.ewm.stats.kafka.EventSimilarityAvro;
@@ -22,6 +28,8 @@ import ru.practicum.ewm.stats.kafka.UserActionAvro;
 public class KafkaConsumerConfig {
 
     private final KafkaProperties kafkaProperties;
+    private final IngestionProperties ingestionProperties;
+    private final MeterRegistry meterRegistry;
 
     // --- FACTORY FOR USER ACTIONS ---
     @Bean
@@ -29,13 +37,16 @@ public class KafkaConsumerConfig {
         Map<String, Object> props = new HashMap<>(kafkaProperties.buildConsumerProperties());
         props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, UserActionAvroDeserializer.class);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        return withMetrics(new DefaultKafkaConsumerFactory<>(props));
     }
 
     @Bean
     public KafkaListenerContainerFactory<?> actionContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, UserActionAvro> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(userActionConsumerFactory());
+        // Actions are keyed by user, so a user's actions stay in one partition and are applied in order
+        factory.setConcurrency(ingestionProperties.getActionListener().getConcurrency());
+        factory.setBatchListener(true);
         return factory;
     }
 
@@ -45,13 +56,41 @@ public class KafkaConsumerConfig {
         Map<String, Object> props = new HashMap<>(kafkaProperties.buildConsumerProperties());
         props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, EventSimilarityAvroDeserializer.class);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        return withMetrics(new DefaultKafkaConsumerFactory<>(props));
     }
 
     @Bean
     public KafkaListenerContainerFactory<?> similarityContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, EventSimilarityAvro> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(eventSimilarityConsumerFactory());
+        // Similarities are keyed by event pair, so the scores of a pair are applied in order
+        factory.setConcurrency(ingestionProperties.getSimilarityListener().getConcurrency());
+        factory.setBatchListener(true);
+        // Similarities are written behind, offsets are acknowledged by the flush that persisted them
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // Skipping a batch would commit its offsets with the next acknowledgement and lose its scores
+        // on a crash, so a failing batch is redelivered until the database takes it
+        IngestionProperties.SimilarityListener listener = ingestionProperties.getSimilarityListener();
+        ExponentialBackOff backOff = new ExponentialBackOff(listener.getRetryInitialBackoff().toMillis(), 2.0);
+        backOff.setMaxInterval(listener.getRetryMaxBackoff().toMillis());
+        backOff.setMaxElapsedTime(Long.MAX_VALUE);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(backOff));
         return factory;
     }
-}
\ No newline at end of file
+
+    @Bean
+    public KafkaListenerContainerFactory<?> similarityIndexContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, EventSimilarityAvro> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(eventSimilarityConsumerFactory());
+        factory.setBatchListener(true);
+        // Never acknowledged: the index is rebuilt from the database and the replay window on every start
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    // Binds the consumer metrics, per-partition lag (kafka.consumer.fetch.manager.records.lag) included
+    private <V> ConsumerFactory<String, V> withMetrics(DefaultKafkaConsumerFactory<String, V> factory) {
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
+    }
+}
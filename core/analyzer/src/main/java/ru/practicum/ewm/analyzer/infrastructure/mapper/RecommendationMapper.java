@@ -1,10 +1,12 @@
 package ru.practicum.ewm.analyzer.infrastructure.mapper;
 
+import java.util.List;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
 import ru.practicum.ewm.analyzer.domain.Recommendation;
 import ru.practicum.ewm.stats.grpc.RecommendedEventProto;
+import ru.practicum.ewm.stats.grpc.RecommendedEventsProto;
 
 @Mapper(componentModel = "spring")
 public interface RecommendationMapper {
@@ -18,4 +20,16 @@ public interface RecommendationMapper {
         @Mapping(target = "allFields", ignore = true),
     })
     RecommendedEventProto toProto(Recommendation recommendation);
+
+    /**
+     * Packs recommendations into parallel arrays, without a message per recommendation.
+     */
+    default RecommendedEventsProto toPackedProto(List<Recommendation> recommendations) {
+        RecommendedEventsProto.Builder builder = RecommendedEventsProto.newBuilder();
+        for (Recommendation recommendation : recommendations) {
+            builder.addEventIds(recommendation.getEventId());
+            builder.addScores(recommendation.getScore());
+        }
+        return builder.build();
+    }
 }
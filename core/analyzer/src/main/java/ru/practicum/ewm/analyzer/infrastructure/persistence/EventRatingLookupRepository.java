@@ -0,0 +1,13 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+/**
+ * Spring Data fragment for the rating lookups by ID sets, which are bound as arrays.
+ */
+public interface EventRatingLookupRepository {
+
+    List<Recommendation> findRatings(Collection<Long> eventIds);
+}
@@ -0,0 +1,31 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+@RequiredArgsConstructor
+public class EventRatingLookupRepositoryImpl implements EventRatingLookupRepository {
+
+    static final String RATINGS_SQL = """
+        SELECT event_id, rating
+        FROM event_ratings
+        WHERE event_id = ANY(?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Recommendation> findRatings(Collection<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(RATINGS_SQL);
+            statement.setArray(1, SqlArrays.bigints(connection, eventIds));
+            return statement;
+        }, (row, rowNum) -> new Recommendation(row.getLong("event_id"), row.getDouble("rating")));
+    }
+}
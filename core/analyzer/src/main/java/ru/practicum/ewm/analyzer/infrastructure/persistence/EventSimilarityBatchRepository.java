@@ -0,0 +1,19 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
+
+/**
+ * Spring Data fragment for the bulk reads and writes JPA cannot express efficiently.
+ */
+public interface EventSimilarityBatchRepository {
+
+    void upsertAll(Collection<EventSimilarity> similarities, int batchSize);
+
+    void deleteAllPairs(Collection<EventSimilarity> similarities, int batchSize);
+
+    void scanAll(Consumer<EventSimilarity> action);
+
+    long pruneToTopNeighbours(int maxNeighbours);
+}
@@ -0,0 +1,104 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
+
+/**
+ * Writes similarities with plain JDBC batches. With {@code reWriteBatchedInserts} enabled the
+ * PostgreSQL driver turns each batch into multi-row {@code INSERT} statements. Reads the whole
+ * table through a server-side cursor and prunes it in a single statement.
+ */
+@RequiredArgsConstructor
+public class EventSimilarityBatchRepositoryImpl implements EventSimilarityBatchRepository {
+
+    private static final String UPSERT_SQL = """
+        INSERT INTO event_similarities (event_a, event_b, score)
+        VALUES (?, ?, ?)
+        ON CONFLICT (event_a, event_b) DO UPDATE
+        SET score = EXCLUDED.score
+        """;
+
+    private static final String DELETE_PAIR_SQL = "DELETE FROM event_similarities WHERE event_a = ? AND event_b = ?";
+
+    // A pair is kept while it ranks among the best neighbours of either of its events. A score
+    // raised since the ranking makes the re-checked join condition fail and keeps the row.
+    private static final String PRUNE_SQL = """
+        WITH ranked AS (
+            SELECT id, score, ROW_NUMBER() OVER (PARTITION BY event_id ORDER BY score DESC, id) AS rank
+            FROM (
+                SELECT id, event_a AS event_id, score FROM event_similarities
+                UNION ALL
+                SELECT id, event_b, score FROM event_similarities
+            ) sides
+        ), pruned AS (
+            SELECT id, score
+            FROM ranked
+            GROUP BY id, score
+            HAVING MIN(rank) > ?
+        )
+        DELETE FROM event_similarities es
+        USING pruned p
+        WHERE es.id = p.id AND es.score <= p.score
+        """;
+
+    // Transaction-scoped, so that analyzer instances do not prune concurrently
+    private static final String PRUNE_LOCK_SQL = "SELECT pg_try_advisory_xact_lock(?)";
+    private static final long PRUNE_LOCK_KEY = "event_similarities.prune".hashCode();
+
+    private static final String SCAN_SQL = "SELECT event_a, event_b, score FROM event_similarities";
+    private static final int SCAN_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void upsertAll(Collection<EventSimilarity> similarities, int batchSize) {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, similarities, batchSize,
+            (statement, similarity) -> {
+                statement.setLong(1, similarity.getEventA());
+                statement.setLong(2, similarity.getEventB());
+                statement.setDouble(3, similarity.getScore());
+            });
+    }
+
+    @Override
+    @Transactional
+    public void deleteAllPairs(Collection<EventSimilarity> similarities, int batchSize) {
+        jdbcTemplate.batchUpdate(DELETE_PAIR_SQL, similarities, batchSize,
+            (statement, similarity) -> {
+                statement.setLong(1, similarity.getEventA());
+                statement.setLong(2, similarity.getEventB());
+            });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void scanAll(Consumer<EventSimilarity> action) {
+        // The driver only uses a cursor with a fetch size inside a transaction
+        EventSimilarity similarity = new EventSimilarity();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(SCAN_SQL);
+            statement.setFetchSize(SCAN_FETCH_SIZE);
+            return statement;
+        }, row -> {
+            similarity.setEventA(row.getLong(1));
+            similarity.setEventB(row.getLong(2));
+            similarity.setScore(row.getDouble(3));
+            action.accept(similarity);
+        });
+    }
+
+    @Override
+    @Transactional
+    public long pruneToTopNeighbours(int maxNeighbours) {
+        Boolean locked = jdbcTemplate.queryForObject(PRUNE_LOCK_SQL, Boolean.class, PRUNE_LOCK_KEY);
+        if (!Boolean.TRUE.equals(locked)) {
+            return 0;
+        }
+        return jdbcTemplate.update(PRUNE_SQL, maxNeighbours);
+    }
+}
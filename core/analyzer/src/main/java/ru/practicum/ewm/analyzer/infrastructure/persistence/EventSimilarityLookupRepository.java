@@ -0,0 +1,19 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+/**
+ * Spring Data fragment for the similarity lookups by ID sets, which are bound as arrays.
+ */
+public interface EventSimilarityLookupRepository {
+
+    List<Recommendation> findTopSimilarExcluding(long eventId, Collection<Long> excludedEvents, int maxResults);
+
+    List<Long> findTopSimilarToSet(Collection<Long> recentlyInteractedEvents, int maxResults);
+
+    Map<Long, List<Recommendation>> findNeighbourEventsFrom(Collection<Long> primaryEvents,
+        Collection<Long> candidates, int maxNeighbours);
+}
@@ -0,0 +1,117 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+@RequiredArgsConstructor
+public class EventSimilarityLookupRepositoryImpl implements EventSimilarityLookupRepository {
+
+    // Each side of the pair is read through its own score index
+    static final String TOP_SIMILAR_EXCLUDING_SQL = """
+        SELECT neighbour_id, score
+        FROM (
+            SELECT event_b AS neighbour_id, score FROM event_similarities WHERE event_a = ?
+            UNION ALL
+            SELECT event_a, score FROM event_similarities WHERE event_b = ?
+        ) neighbours
+        WHERE neighbour_id <> ALL(?)
+        ORDER BY score DESC
+        LIMIT ?
+        """;
+
+    static final String TOP_SIMILAR_TO_SET_SQL = """
+        SELECT neighbour_id
+        FROM (
+            SELECT event_b AS neighbour_id, score
+            FROM event_similarities
+            WHERE event_a = ANY(?) AND event_b <> ALL(?)
+            UNION ALL
+            SELECT event_a, score
+            FROM event_similarities
+            WHERE event_b = ANY(?) AND event_a <> ALL(?)
+        ) neighbours
+        GROUP BY neighbour_id
+        ORDER BY AVG(score) DESC
+        LIMIT ?
+        """;
+
+    private static final String NEIGHBOURS_FROM_SQL = """
+        SELECT primary_event, neighbour_event, score
+        FROM (
+            SELECT primary_event, neighbour_event, score,
+                   ROW_NUMBER() OVER (PARTITION BY primary_event ORDER BY score DESC) AS rank
+            FROM (
+                SELECT event_a AS primary_event, event_b AS neighbour_event, score
+                FROM event_similarities
+                WHERE event_a = ANY(?) AND event_b = ANY(?)
+                UNION ALL
+                SELECT event_b, event_a, score
+                FROM event_similarities
+                WHERE event_b = ANY(?) AND event_a = ANY(?)
+            ) pairs
+        ) ranked
+        WHERE rank <= ?
+        ORDER BY primary_event, score DESC
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Recommendation> findTopSimilarExcluding(long eventId, Collection<Long> excludedEvents,
+        int maxResults) {
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(TOP_SIMILAR_EXCLUDING_SQL);
+            statement.setLong(1, eventId);
+            statement.setLong(2, eventId);
+            statement.setArray(3, SqlArrays.bigints(connection, excludedEvents));
+            statement.setInt(4, maxResults);
+            return statement;
+        }, (row, rowNum) -> new Recommendation(row.getLong("neighbour_id"), row.getDouble("score")));
+    }
+
+    @Override
+    public List<Long> findTopSimilarToSet(Collection<Long> recentlyInteractedEvents, int maxResults) {
+        if (recentlyInteractedEvents == null || recentlyInteractedEvents.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(TOP_SIMILAR_TO_SET_SQL);
+            var events = SqlArrays.bigints(connection, recentlyInteractedEvents);
+            for (int i = 1; i <= 4; i++) {
+                statement.setArray(i, events);
+            }
+            statement.setInt(5, maxResults);
+            return statement;
+        }, (row, rowNum) -> row.getLong("neighbour_id"));
+    }
+
+    @Override
+    public Map<Long, List<Recommendation>> findNeighbourEventsFrom(Collection<Long> primaryEvents,
+        Collection<Long> candidates, int maxNeighbours) {
+        if (primaryEvents == null || primaryEvents.isEmpty() || candidates == null || candidates.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<Recommendation>> neighbours = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(NEIGHBOURS_FROM_SQL);
+            var primary = SqlArrays.bigints(connection, primaryEvents);
+            var candidateIds = SqlArrays.bigints(connection, candidates);
+            statement.setArray(1, primary);
+            statement.setArray(2, candidateIds);
+            statement.setArray(3, primary);
+            statement.setArray(4, candidateIds);
+            statement.setInt(5, maxNeighbours);
+            return statement;
+        }, row -> {
+            neighbours.computeIfAbsent(row.getLong("primary_event"), id -> new ArrayList<>())
+                .add(new Recommendation(row.getLong("neighbour_event"), row.getDouble("score")));
+        });
+        return neighbours;
+    }
+}
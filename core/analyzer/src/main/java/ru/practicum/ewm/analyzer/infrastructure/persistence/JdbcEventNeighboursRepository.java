@@ -0,0 +1,146 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.analyzer.domain.EventNeighboursRepository;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+/**
+ * Keeps every event's best neighbours as a single row of parallel arrays, so reading the neighbours
+ * of a few events costs a few primary key lookups. Lists are rebuilt from the two score indexes of
+ * {@code event_similarities}.
+ * <p>
+ * A refresh first locks the rows of its events, creating the missing ones, and only then reads the
+ * similarities, in a statement of its own. A concurrent refresh of the same event therefore either
+ * commits first and is read, or waits for this transaction and reads its similarities in turn.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JdbcEventNeighboursRepository implements EventNeighboursRepository {
+
+    // Rows are created and locked in event ID order, so concurrent refreshes cannot deadlock
+    private static final String CREATE_SQL = """
+        INSERT INTO event_neighbours (event_id, neighbour_ids, scores)
+        SELECT event_id, '{}', '{}'
+        FROM unnest(?::BIGINT[]) AS e(event_id)
+        ORDER BY event_id
+        ON CONFLICT (event_id) DO NOTHING
+        """;
+
+    private static final String LOCK_SQL = """
+        SELECT event_id
+        FROM event_neighbours
+        WHERE event_id = ANY(?)
+        ORDER BY event_id
+        FOR UPDATE
+        """;
+
+    private static final String REFRESH_SQL = """
+        INSERT INTO event_neighbours (event_id, neighbour_ids, scores)
+        SELECT e.event_id,
+               COALESCE(array_agg(n.neighbour_id ORDER BY n.score DESC, n.neighbour_id)
+                   FILTER (WHERE n.neighbour_id IS NOT NULL), '{}'),
+               COALESCE(array_agg(n.score::REAL ORDER BY n.score DESC, n.neighbour_id)
+                   FILTER (WHERE n.neighbour_id IS NOT NULL), '{}')
+        FROM unnest(?::BIGINT[]) AS e(event_id)
+        LEFT JOIN LATERAL (
+            SELECT s.neighbour_id, s.score
+            FROM (
+                (SELECT es.event_b AS neighbour_id, es.score
+                 FROM event_similarities es
+                 WHERE es.event_a = e.event_id
+                 ORDER BY es.score DESC
+                 LIMIT ?)
+                UNION ALL
+                (SELECT es.event_a, es.score
+                 FROM event_similarities es
+                 WHERE es.event_b = e.event_id
+                 ORDER BY es.score DESC
+                 LIMIT ?)
+            ) s
+            ORDER BY s.score DESC
+            LIMIT ?
+        ) n ON TRUE
+        GROUP BY e.event_id
+        ORDER BY e.event_id
+        ON CONFLICT (event_id) DO UPDATE
+        SET neighbour_ids = EXCLUDED.neighbour_ids,
+            scores = EXCLUDED.scores
+        """;
+
+    private static final String FIND_SQL = """
+        SELECT event_id, neighbour_ids, scores
+        FROM event_neighbours
+        WHERE event_id = ANY(?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void refresh(Collection<Long> eventIds, int maxNeighbours) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+        TreeSet<Long> sorted = new TreeSet<>(eventIds);
+        jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement(CREATE_SQL);
+            statement.setArray(1, SqlArrays.bigints(connection, sorted));
+            return statement;
+        });
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(LOCK_SQL);
+            statement.setArray(1, SqlArrays.bigints(connection, sorted));
+            return statement;
+        }, row -> {
+        });
+        jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement(REFRESH_SQL);
+            statement.setArray(1, SqlArrays.bigints(connection, sorted));
+            statement.setInt(2, maxNeighbours);
+            statement.setInt(3, maxNeighbours);
+            statement.setInt(4, maxNeighbours);
+            return statement;
+        });
+    }
+
+    @Override
+    public Map<Long, List<Recommendation>> findNeighbours(Collection<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<Recommendation>> neighbours = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(FIND_SQL);
+            statement.setArray(1, SqlArrays.bigints(connection, eventIds));
+            return statement;
+        }, row -> {
+            Long[] ids = toArray(row.getArray("neighbour_ids"), Long[].class);
+            Float[] scores = toArray(row.getArray("scores"), Float[].class);
+            List<Recommendation> list = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                list.add(new Recommendation(ids[i], scores[i]));
+            }
+            neighbours.put(row.getLong("event_id"), list);
+        });
+        return neighbours;
+    }
+
+    private static <T> T toArray(Array array, Class<T> type) throws SQLException {
+        try {
+            return type.cast(array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.PredictionRepository;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+import ru.practicum.ewm.analyzer.domain.UserPredictions;
+
+/**
+ * Selects the candidates, ranks their neighbours, looks up the user's weights and scores the
+ * candidates in one statement. Similarities are stored once per pair, so every lookup reads both
+ * sides of the pair through the (event_a, score) and (event_b, score) indexes. With neighbour lists
+ * enabled, the candidates come from the stored lists of the recent events instead.
+ * <p>
+ * The recent events come back as rows of rank 0 without a score, the predictions follow ranked by
+ * the candidates' average similarity.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JdbcPredictionRepository implements PredictionRepository {
+
+    private static final String SIMILAR_FROM_PAIRS = """
+            SELECT es.event_b AS event_id, es.score
+            FROM recent r
+            JOIN event_similarities es ON es.event_a = r.event_id
+            UNION ALL
+            SELECT es.event_a, es.score
+            FROM recent r
+            JOIN event_similarities es ON es.event_b = r.event_id
+        """;
+
+    // One primary key lookup per recent event
+    private static final String SIMILAR_FROM_NEIGHBOUR_LISTS = """
+            SELECT n.event_id, n.score
+            FROM recent r
+            JOIN event_neighbours en ON en.event_id = r.event_id
+            CROSS JOIN LATERAL unnest(en.neighbour_ids, en.scores) AS n(event_id, score)
+        """;
+
+    private static final String PREDICT_SQL = """
+        WITH interacted AS (
+            SELECT event_id, weight, interaction_time
+            FROM user_interactions
+            WHERE user_id = :userId
+        ), recent AS (
+            SELECT event_id
+            FROM interacted
+            ORDER BY interaction_time DESC
+            LIMIT :maxRecentEvents
+        ), similar_to_recent AS (
+        %s
+        ), candidates AS (
+            SELECT event_id, AVG(score) AS avg_score
+            FROM similar_to_recent
+            WHERE event_id NOT IN (SELECT event_id FROM recent)
+            GROUP BY event_id
+            ORDER BY avg_score DESC
+            LIMIT :maxResults
+        ), neighbours AS (
+            SELECT c.event_id AS candidate, n.score, n.weight
+            FROM candidates c
+            CROSS JOIN LATERAL (
+                SELECT s.score, i.weight
+                FROM (
+                    SELECT es.event_b AS event_id, es.score
+                    FROM event_similarities es
+                    WHERE es.event_a = c.event_id
+                    UNION ALL
+                    SELECT es.event_a, es.score
+                    FROM event_similarities es
+                    WHERE es.event_b = c.event_id
+                ) s
+                JOIN interacted i ON i.event_id = s.event_id
+                ORDER BY s.score DESC
+                LIMIT :maxNeighbours
+            ) n
+        )
+        SELECT event_id, NULL::DOUBLE PRECISION AS score, 0 AS rank
+        FROM recent
+        UNION ALL
+        SELECT c.event_id,
+               COALESCE(SUM(n.score * n.weight) / NULLIF(SUM(n.score), 0), 0),
+               ROW_NUMBER() OVER (ORDER BY c.avg_score DESC)
+        FROM candidates c
+        LEFT JOIN neighbours n ON n.candidate = c.event_id
+        GROUP BY c.event_id, c.avg_score
+        ORDER BY rank
+        """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final RecommendationProperties properties;
+
+    @Override
+    public UserPredictions predictForUser(long userId, int maxRecentEvents, int maxNeighbours, int maxResults) {
+        List<Recommendation> predictions = new ArrayList<>(maxResults);
+        List<Long> recentEvents = new ArrayList<>(maxRecentEvents);
+        Map<String, Object> params = Map.of(
+            "userId", userId,
+            "maxRecentEvents", maxRecentEvents,
+            "maxNeighbours", maxNeighbours,
+            "maxResults", maxResults);
+        String similarToRecent = properties.getNeighbourLists().isEnabled()
+            ? SIMILAR_FROM_NEIGHBOUR_LISTS
+            : SIMILAR_FROM_PAIRS;
+        jdbcTemplate.query(PREDICT_SQL.formatted(similarToRecent), params, row -> {
+            if (row.getLong("rank") == 0) {
+                recentEvents.add(row.getLong("event_id"));
+            } else {
+                predictions.add(new Recommendation(row.getLong("event_id"), row.getDouble("score")));
+            }
+        });
+        return new UserPredictions(predictions, recentEvents);
+    }
+}
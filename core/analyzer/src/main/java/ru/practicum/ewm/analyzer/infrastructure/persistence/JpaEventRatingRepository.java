@@ -0,0 +1,29 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.practicum.ewm.analyzer.domain.EventRating;
+import ru.practicum.ewm.analyzer.domain.EventRatingRepository;
+
+public interface JpaEventRatingRepository extends EventRatingRepository, JpaRepository<EventRating, Long>,
+    EventRatingLookupRepository {
+
+    @Override
+    default void addToRatings(Map<Long, Double> increments) {
+        // Rows are locked in event ID order, so concurrent batches cannot deadlock
+        new TreeMap<>(increments).forEach(this::addToRating);
+    }
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO event_ratings (event_id, rating)
+        VALUES (:eventId, :increment)
+        ON CONFLICT (event_id) DO UPDATE
+        SET rating = event_ratings.rating + EXCLUDED.rating
+        """, nativeQuery = true)
+    void addToRating(@Param("eventId") long eventId, @Param("increment") double increment);
+}
@@ -1,40 +1,47 @@
 package ru.practicum.ewm.analyzer.infrastructure.persistence;
 
-import java.util.Collection;
+import java.time.Instant;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import ru.practicum.ewm.analyzer.domain.Recommendation;
 import ru.practicum.ewm.analyzer.domain.UserInteraction;
 import ru.practicum.ewm.analyzer.domain.UserInteractionRepository;
 
-public interface JpaUserInteractionRepository extends UserInteractionRepository, JpaRepository<UserInteraction, Long> {
+public interface JpaUserInteractionRepository extends UserInteractionRepository, JpaRepository<UserInteraction, Long>,
+    UserInteractionLookupRepository {
+
+    // FOR UPDATE makes the previous weight the latest committed one, not the statement snapshot's
+    @Override
+    @Query(value = """
+        WITH previous AS (
+            SELECT weight
+            FROM user_interactions
+            WHERE user_id = :userId AND event_id = :eventId
+            FOR UPDATE
+        ), upserted AS (
+            INSERT INTO user_interactions (user_id, event_id, weight, interaction_time)
+            VALUES (:userId, :eventId, :weight, :interactionTime)
+            ON CONFLICT (user_id, event_id) DO UPDATE
+            SET weight = GREATEST(user_interactions.weight, EXCLUDED.weight),
+                interaction_time = GREATEST(user_interactions.interaction_time, EXCLUDED.interaction_time)
+            RETURNING weight
+        )
+        SELECT (SELECT weight FROM upserted) - COALESCE((SELECT weight FROM previous), 0)
+        """, nativeQuery = true)
+    double upsert(@Param("userId") long userId, @Param("eventId") long eventId, @Param("weight") double weight,
+        @Param("interactionTime") Instant interactionTime);
 
     @Override
     @Query("""
-        SELECT DISTINCT ui.eventId
+        SELECT ui.eventId
         FROM UserInteraction ui
         WHERE ui.userId = :userId
         """)
     List<Long> findInteractedEvents(@Param("userId") long userId);
 
-    @Query("""
-        SELECT new ru.practicum.ewm.analyzer.domain.Recommendation(T.eventId, SUM(T.maxWeight))
-        FROM (
-            SELECT ui.eventId AS eventId, MAX(ui.weight) AS maxWeight
-            FROM UserInteraction ui
-            WHERE ui.eventId IN :eventIds
-            GROUP BY ui.userId, ui.eventId
-            ) AS T
-            GROUP BY T.eventId
-        """)
-    List<Recommendation> findInteractionsCount(@Param("eventIds") Collection<Long> eventIds);
-
     @Override
     default List<Long> findRecentlyInteractedEvents(long userId, int maxResults) {
         return findRecentlyInteractedEventsPageable(userId, PageRequest.of(0, maxResults));
@@ -47,26 +54,4 @@ public interface JpaUserInteractionRepository extends UserInteractionRepository,
         ORDER BY ui.interactionTime DESC
         """)
     List<Long> findRecentlyInteractedEventsPageable(@Param("userId") long userId, Pageable pageable);
-
-    @Query("""
-        SELECT ui.eventId AS eventId, MAX(ui.weight) AS weight
-        FROM UserInteraction ui
-        WHERE ui.userId = :userId AND ui.eventId IN :eventIds
-        GROUP BY ui.eventId
-    """)
-    List<InteractionWeightProjection> findMaxWeightsForUserAndEvents(@Param("userId") long userId, @Param("eventIds") Collection<Long> eventIds);
-
-    @Override
-    default Map<Long, Double> findInteractionWeights(long userId, Collection<Long> eventIds) {
-        return findMaxWeightsForUserAndEvents(userId, eventIds).stream()
-            .collect(Collectors.toMap(
-                InteractionWeightProjection::getEventId,
-                InteractionWeightProjection::getWeight
-            ));
-    }
-
-    interface InteractionWeightProjection {
-        Long getEventId();
-        Double getWeight();
-    }
 }
\ No newline at end of file
@@ -0,0 +1,205 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.analyzer.application.PredictionCache;
+import ru.practicum.ewm.analyzer.application.PredictionInvalidationPublisher;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+
+/**
+ * Broadcasts prediction cache invalidations between analyzer instances over PostgreSQL
+ * {@code LISTEN}/{@code NOTIFY}.
+ * <p>
+ * A notification sent inside a transaction is delivered only when it commits, so no instance drops
+ * a user's predictions before their new action is visible. Every instance, the sender included,
+ * listens on a dedicated connection outside the pool and applies the invalidations to its own cache.
+ * Notifications missed while that connection was down cannot be told apart, so the whole cache is
+ * dropped once it is back.
+ */
+@Component
+@Slf4j
+public class PgPredictionInvalidationChannel implements PredictionInvalidationPublisher, SmartLifecycle {
+
+    private static final String CHANNEL = "analyzer_prediction_cache";
+    private static final String NOTIFY_SQL = "SELECT pg_notify('" + CHANNEL + "', ?)";
+    private static final String USERS = "u:";
+    private static final String EVENTS = "e:";
+    // PostgreSQL rejects payloads of 8000 bytes or more
+    private static final int MAX_PAYLOAD = 7_900;
+    private static final int POLL_MILLIS = 500;
+    private static final long RECONNECT_MILLIS = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final PredictionCache predictionCache;
+    private final boolean enabled;
+
+    private final Counter sent;
+    private final Counter received;
+    private final Counter reconnects;
+    private final Counter failures;
+
+    private volatile Thread listener;
+
+    public PgPredictionInvalidationChannel(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties,
+        PredictionCache predictionCache, RecommendationProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.predictionCache = predictionCache;
+        this.enabled = predictionCache.isEnabled() && properties.getPredictionCache().isBroadcastInvalidations();
+
+        this.sent = notifications(meterRegistry, "sent");
+        this.received = notifications(meterRegistry, "received");
+        this.reconnects = Counter.builder("analyzer.prediction-cache.broadcast.reconnects")
+            .description("Times the invalidation listener reconnected and dropped the whole cache")
+            .register(meterRegistry);
+        this.failures = Counter.builder("analyzer.prediction-cache.broadcast.failures")
+            .description("Similarity invalidations that could not be broadcast")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void publishUsers(Collection<Long> userIds) {
+        publish(USERS, userIds);
+    }
+
+    @Override
+    public void publishEvents(Collection<Long> eventIds) {
+        try {
+            publish(EVENTS, eventIds);
+        } catch (DataAccessException e) {
+            failures.increment();
+            log.warn("Failed to broadcast the similarity changes of {} events, other instances serve their "
+                + "predictions until they expire: {}", eventIds.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        listener = new Thread(this::listen, "prediction-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread current = listener;
+        listener = null;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return listener != null;
+    }
+
+    private void publish(String prefix, Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        for (String payload : payloads(prefix, ids)) {
+            jdbcTemplate.queryForObject(NOTIFY_SQL, Object.class, payload);
+            sent.increment();
+        }
+    }
+
+    private void listen() {
+        boolean first = true;
+        while (listener == Thread.currentThread()) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (!first) {
+                    reconnects.increment();
+                    predictionCache.invalidateAll();
+                    log.info("Prediction invalidation listener reconnected, dropped the whole cache");
+                }
+                first = false;
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (listener == Thread.currentThread()) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            apply(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Prediction invalidation listener lost its connection, reconnecting: {}", e.getMessage());
+                if (!sleep()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(String payload) {
+        received.increment();
+        List<Long> ids = new ArrayList<>();
+        for (String id : payload.substring(2).split(",")) {
+            ids.add(Long.parseLong(id));
+        }
+        if (payload.startsWith(USERS)) {
+            ids.forEach(predictionCache::invalidateUser);
+        } else if (payload.startsWith(EVENTS)) {
+            predictionCache.onEventsChanged(ids);
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(RECONNECT_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static List<String> payloads(String prefix, Collection<Long> ids) {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(prefix);
+        for (Long id : ids) {
+            String value = Long.toString(id);
+            if (payload.length() > prefix.length() && payload.length() + 1 + value.length() > MAX_PAYLOAD) {
+                payloads.add(payload.toString());
+                payload.setLength(prefix.length());
+            }
+            if (payload.length() > prefix.length()) {
+                payload.append(',');
+            }
+            payload.append(value);
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+
+    private static Counter notifications(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder("analyzer.prediction-cache.broadcast.notifications")
+            .description("Invalidation notifications by direction")
+            .tag("direction", direction)
+            .register(meterRegistry);
+    }
+}
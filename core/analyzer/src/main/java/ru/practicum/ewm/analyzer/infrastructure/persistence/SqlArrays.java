@@ -0,0 +1,21 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Binds ID sets as a single array parameter, used as {@code = ANY(?)} or {@code <> ALL(?)}. The
+ * statement text and its plan stay the same whatever the number of IDs, unlike an expanded
+ * {@code IN} list.
+ */
+final class SqlArrays {
+
+    private SqlArrays() {
+    }
+
+    static Array bigints(Connection connection, Collection<Long> ids) throws SQLException {
+        return connection.createArrayOf("bigint", ids.toArray(Long[]::new));
+    }
+}
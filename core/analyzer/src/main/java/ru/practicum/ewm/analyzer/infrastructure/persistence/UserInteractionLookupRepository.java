@@ -0,0 +1,12 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Spring Data fragment for the interaction lookups by ID sets, which are bound as arrays.
+ */
+public interface UserInteractionLookupRepository {
+
+    Map<Long, Double> findInteractionWeights(long userId, Collection<Long> eventIds);
+}
@@ -0,0 +1,36 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@RequiredArgsConstructor
+public class UserInteractionLookupRepositoryImpl implements UserInteractionLookupRepository {
+
+    static final String WEIGHTS_SQL = """
+        SELECT event_id, weight
+        FROM user_interactions
+        WHERE user_id = ? AND event_id = ANY(?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Map<Long, Double> findInteractionWeights(long userId, Collection<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Double> weights = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(WEIGHTS_SQL);
+            statement.setLong(1, userId);
+            statement.setArray(2, SqlArrays.bigints(connection, eventIds));
+            return statement;
+        }, row -> {
+            weights.put(row.getLong("event_id"), row.getDouble("weight"));
+        });
+        return weights;
+    }
+}
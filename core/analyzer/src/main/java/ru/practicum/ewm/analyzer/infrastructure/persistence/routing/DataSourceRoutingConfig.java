@@ -0,0 +1,66 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Replaces the auto-configured data source with one that sends read-only transactions to the
+ * replicas. JPA, the JDBC templates and the transaction manager all use the {@link Primary} proxy.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource-routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+        DataSourceProperties primaryProperties, DataSourceRoutingProperties properties, MeterRegistry meterRegistry) {
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (DataSourceRoutingProperties.Replica replica : properties.getReplicas()) {
+            replicas.put(replica.getName(), replicaDataSource(replica, primaryProperties));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, properties.getMaxLag(),
+            properties.getCheckInterval(), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    private static HikariDataSource replicaDataSource(DataSourceRoutingProperties.Replica replica,
+        DataSourceProperties primaryProperties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica-" + replica.getName());
+        dataSource.setDriverClassName(primaryProperties.determineDriverClassName());
+        dataSource.setJdbcUrl(replica.getUrl());
+        dataSource.setUsername(replica.getUsername() != null
+            ? replica.getUsername() : primaryProperties.determineUsername());
+        dataSource.setPassword(replica.getPassword() != null
+            ? replica.getPassword() : primaryProperties.determinePassword());
+        dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+        dataSource.setConnectionTimeout(replica.getConnectionTimeout().toMillis());
+        dataSource.setReadOnly(true);
+        // Start without connecting, an unreachable replica must not keep the analyzer from starting
+        dataSource.setInitializationFailTimeout(-1);
+        return dataSource;
+    }
+}
@@ -0,0 +1,49 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence.routing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "datasource-routing")
+@Getter
+@Setter
+public class DataSourceRoutingProperties {
+
+    /**
+     * Whether read-only transactions are sent to the replicas. When disabled, everything runs on
+     * {@code spring.datasource}.
+     */
+    private boolean enabled = false;
+    private List<Replica> replicas = new ArrayList<>();
+    /**
+     * Replication lag beyond which a replica stops receiving reads until it catches up.
+     */
+    private Duration maxLag = Duration.ofSeconds(5);
+    /**
+     * How often the lag and availability of every replica are checked.
+     */
+    private Duration checkInterval = Duration.ofSeconds(1);
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String name;
+        private String url;
+        /**
+         * Defaults to the primary's username.
+         */
+        private String username;
+        /**
+         * Defaults to the primary's password.
+         */
+        private String password;
+        private int maximumPoolSize = 10;
+        /**
+         * How long a read waits for a replica connection before it falls back to the primary.
+         */
+        private Duration connectionTimeout = Duration.ofSeconds(1);
+    }
+}
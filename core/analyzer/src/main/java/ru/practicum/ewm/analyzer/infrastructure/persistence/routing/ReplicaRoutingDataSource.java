@@ -0,0 +1,207 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections of read-only transactions to the replicas, round robin, and all others to
+ * the primary.
+ * <p>
+ * A background check measures the replay lag of every replica. A replica that lags more than
+ * {@code maxLag}, fails the check or fails to hand out a connection takes no reads until a later
+ * check finds it healthy again; with no healthy replica, reads run on the primary.
+ * <p>
+ * The transaction managers obtain the connection before they publish the read-only flag of the
+ * transaction, so this data source has to sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements InitializingBean, DisposableBean {
+
+    // Zero when the replica has replayed everything it received, e.g. while the primary is idle
+    private static final String LAG_SQL = """
+        SELECT CASE
+            WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+            ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())
+        END
+        """;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final Duration maxLag;
+    private final Duration checkInterval;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-lag-checker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+    private final Counter fallbacks;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, HikariDataSource> replicas, Duration maxLag,
+        Duration checkInterval, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.entrySet().stream()
+            .map(replica -> new Replica(replica.getKey(), replica.getValue()))
+            .toList();
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+
+        this.primaryConnections = connections(meterRegistry, "primary");
+        this.replicaConnections = connections(meterRegistry, "replica");
+        this.fallbacks = Counter.builder("analyzer.datasource.replica.fallbacks")
+            .description("Read-only connections taken from the primary because a replica failed to connect")
+            .register(meterRegistry);
+        for (Replica replica : this.replicas) {
+            Gauge.builder("analyzer.datasource.replica.lag", replica, r -> r.lagSeconds)
+                .description("Replay lag of the replica in seconds, NaN when unknown")
+                .tag("replica", replica.name)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+            Gauge.builder("analyzer.datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                .description("Whether the replica takes reads")
+                .tag("replica", replica.name)
+                .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        long interval = checkInterval.toMillis();
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        checker.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+        Replica replica = pickReplica();
+        if (replica != null) {
+            try {
+                Connection connection = source.connect(replica.dataSource);
+                replicaConnections.increment();
+                return connection;
+            } catch (SQLException e) {
+                // The next check brings it back once it answers again
+                replica.markDown(e);
+                fallbacks.increment();
+            }
+        }
+        primaryConnections.increment();
+        return source.connect(primary);
+    }
+
+    private Replica pickReplica() {
+        if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout((int) Math.max(1, checkInterval.toSeconds()));
+                try (ResultSet result = statement.executeQuery(LAG_SQL)) {
+                    result.next();
+                    double lag = result.getDouble(1);
+                    // Nothing replayed since the replica started
+                    replica.update(result.wasNull() ? Double.NaN : lag, maxLag);
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    private static Counter connections(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("analyzer.datasource.connections")
+            .description("Connections handed out by target")
+            .tag("target", target)
+            .register(meterRegistry);
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        // Unhealthy until the first check has measured the lag
+        private volatile boolean healthy;
+        private volatile double lagSeconds = Double.NaN;
+
+        private Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private void update(double lagSeconds, Duration maxLag) {
+            this.lagSeconds = lagSeconds;
+            boolean nowHealthy = !Double.isNaN(lagSeconds) && lagSeconds * 1000 <= maxLag.toMillis();
+            if (nowHealthy != healthy) {
+                if (nowHealthy) {
+                    log.info("Replica {} takes reads again, lag {} s", name, lagSeconds);
+                } else {
+                    log.warn("Replica {} lags {} s behind the primary, reads go elsewhere", name, lagSeconds);
+                }
+            }
+            healthy = nowHealthy;
+        }
+
+        private void markDown(Exception cause) {
+            if (healthy) {
+                log.warn("Replica {} is unavailable, reads go elsewhere: {}", name, cause.getMessage());
+            }
+            healthy = false;
+            lagSeconds = Double.NaN;
+        }
+    }
+}
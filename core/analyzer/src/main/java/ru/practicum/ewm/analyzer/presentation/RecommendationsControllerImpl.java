@@ -1,27 +1,46 @@
 package ru.practicum.ewm.analyzer.presentation;
 
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.beans.factory.DisposableBean;
 import ru.practicum.ewm.analyzer.application.RecommendationsService;
 import ru.practicum.ewm.analyzer.domain.Recommendation;
 import ru.practicum.ewm.analyzer.infrastructure.mapper.RecommendationMapper;
+import ru.practicum.ewm.analyzer.presentation.config.GrpcExecutionProperties;
 import ru.practicum.ewm.stats.grpc.InteractionsCountRequestProto;
 import ru.practicum.ewm.stats.grpc.RecommendationsControllerGrpc;
 import ru.practicum.ewm.stats.grpc.RecommendedEventProto;
+import ru.practicum.ewm.stats.grpc.RecommendedEventsProto;
 import ru.practicum.ewm.stats.grpc.SimilarEventsRequestProto;
 import ru.practicum.ewm.stats.grpc.UserPredictionsRequestProto;
 
 @GrpcService
 @Slf4j
 @RequiredArgsConstructor
-public class RecommendationsControllerImpl extends RecommendationsControllerGrpc.RecommendationsControllerImplBase {
+public class RecommendationsControllerImpl extends RecommendationsControllerGrpc.RecommendationsControllerImplBase
+    implements DisposableBean {
 
     private final RecommendationsService recommendationsService;
     private final RecommendationMapper mapper;
+    private final GrpcExecutionProperties executionProperties;
+
+    private final ScheduledExecutorService streamDeadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "grpc-stream-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void getSimilarEvents(
@@ -57,27 +76,24 @@ public class RecommendationsControllerImpl extends RecommendationsControllerGrpc
         InteractionsCountRequestProto request,
         StreamObserver<RecommendedEventProto> responseObserver
     ) {
-        log.info("gRPC request received for GetInteractionsCount: {}", request);
-
-        try {
-            List<Recommendation> recommendations = recommendationsService.getInteractionsCount(
-                request.getEventIdsList()
-            );
-
-            for (Recommendation recommendation : recommendations) {
-                RecommendedEventProto protoMessage = mapper.toProto(recommendation);
-                responseObserver.onNext(protoMessage);
-            }
-
-            responseObserver.onCompleted();
-            log.info("Successfully streamed {} interaction counts.", recommendations.size());
-
-        } catch (Exception e) {
-            log.error("Error processing GetInteractionsCount request", e);
-
-            Status status = Status.INTERNAL.withDescription("An error occurred: " + e.getMessage());
-            responseObserver.onError(status.asRuntimeException());
-        }
+        log.info("gRPC request received for GetInteractionsCount: {} events", request.getEventIdsCount());
+
+        // Chunks are read and sent only while the client keeps up, so memory stays bounded by one chunk
+        ServerCallStreamObserver<RecommendedEventProto> observer =
+            (ServerCallStreamObserver<RecommendedEventProto>) responseObserver;
+        List<Long> eventIds = List.copyOf(new LinkedHashSet<>(request.getEventIdsList()));
+        InteractionsCountStream stream = new InteractionsCountStream(observer, eventIds,
+            executionProperties.getStreamChunkSize());
+        // A client that stops reading would otherwise hold the bulkhead permit indefinitely
+        Duration timeout = executionProperties.getStreamTimeout();
+        ScheduledFuture<?> deadline = streamDeadlines.schedule(() -> stream.expire(timeout), timeout.toMillis(),
+            TimeUnit.MILLISECONDS);
+        stream.onDone(() -> deadline.cancel(false));
+        observer.setOnCancelHandler(() -> {
+            deadline.cancel(false);
+            log.info("GetInteractionsCount cancelled by the client.");
+        });
+        observer.setOnReadyHandler(stream);
     }
 
     @Override
@@ -107,4 +123,131 @@ public class RecommendationsControllerImpl extends RecommendationsControllerGrpc
             responseObserver.onError(status.asRuntimeException());
         }
     }
+
+    @Override
+    public void getSimilarEventsPacked(
+        SimilarEventsRequestProto request,
+        StreamObserver<RecommendedEventsProto> responseObserver
+    ) {
+        log.info("gRPC request received for GetSimilarEventsPacked: {}", request);
+        respondPacked("GetSimilarEventsPacked", responseObserver, () -> recommendationsService.findSimilarEvents(
+            request.getEventId(),
+            request.getUserId(),
+            request.getMaxResults()
+        ));
+    }
+
+    @Override
+    public void getInteractionsCountPacked(
+        InteractionsCountRequestProto request,
+        StreamObserver<RecommendedEventsProto> responseObserver
+    ) {
+        log.info("gRPC request received for GetInteractionsCountPacked: {} events", request.getEventIdsCount());
+        respondPacked("GetInteractionsCountPacked", responseObserver,
+            () -> recommendationsService.getInteractionsCount(request.getEventIdsList()));
+    }
+
+    @Override
+    public void getRecommendationsForUserPacked(
+        UserPredictionsRequestProto request,
+        StreamObserver<RecommendedEventsProto> responseObserver
+    ) {
+        log.info("gRPC request received for GetRecommendationsForUserPacked: {}", request);
+        respondPacked("GetRecommendationsForUserPacked", responseObserver, () -> recommendationsService.getUserPredictions(
+            request.getUserId(),
+            request.getMaxResults()
+        ));
+    }
+
+    @Override
+    public void destroy() {
+        streamDeadlines.shutdownNow();
+    }
+
+    private void respondPacked(String rpcName, StreamObserver<RecommendedEventsProto> responseObserver,
+        Supplier<List<Recommendation>> recommendations) {
+        try {
+            RecommendedEventsProto response = mapper.toPackedProto(recommendations.get());
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+            log.info("Successfully sent {} packed results for {}.", response.getEventIdsCount(), rpcName);
+
+        } catch (Exception e) {
+            log.error("Error processing {} request", rpcName, e);
+
+            Status status = Status.INTERNAL.withDescription("An error occurred: " + e.getMessage());
+            responseObserver.onError(status.asRuntimeException());
+        }
+    }
+
+    /**
+     * Sends the interaction counts of a GetInteractionsCount call chunk by chunk, whenever the
+     * transport is ready. The transport runs it on the call's serialized listener, the deadline on
+     * its own thread, hence the synchronization.
+     */
+    private final class InteractionsCountStream implements Runnable {
+
+        private final ServerCallStreamObserver<RecommendedEventProto> observer;
+        private final List<Long> eventIds;
+        private final int chunkSize;
+        private Runnable onDone = () -> {
+        };
+        private int next;
+        private int sent;
+        private boolean done;
+
+        private InteractionsCountStream(ServerCallStreamObserver<RecommendedEventProto> observer, List<Long> eventIds,
+            int chunkSize) {
+            this.observer = observer;
+            this.eventIds = eventIds;
+            this.chunkSize = chunkSize;
+        }
+
+        private synchronized void onDone(Runnable onDone) {
+            this.onDone = onDone;
+        }
+
+        @Override
+        public synchronized void run() {
+            try {
+                while (!done && observer.isReady() && !observer.isCancelled()) {
+                    if (next >= eventIds.size()) {
+                        finish();
+                        observer.onCompleted();
+                        log.info("Successfully streamed {} interaction counts.", sent);
+                        return;
+                    }
+                    List<Long> chunk = eventIds.subList(next, Math.min(next + chunkSize, eventIds.size()));
+                    next += chunk.size();
+                    for (Recommendation recommendation : recommendationsService.getInteractionsCount(chunk)) {
+                        observer.onNext(mapper.toProto(recommendation));
+                        sent++;
+                    }
+                }
+            } catch (Exception e) {
+                finish();
+                log.error("Error processing GetInteractionsCount request", e);
+
+                Status status = Status.INTERNAL.withDescription("An error occurred: " + e.getMessage());
+                observer.onError(status.asRuntimeException());
+            }
+        }
+
+        private synchronized void expire(Duration timeout) {
+            if (done || observer.isCancelled()) {
+                return;
+            }
+            finish();
+            log.warn("GetInteractionsCount stream not consumed within {}, {} of {} events sent", timeout, next,
+                eventIds.size());
+            observer.onError(Status.DEADLINE_EXCEEDED
+                .withDescription("Stream not consumed within " + timeout)
+                .asRuntimeException());
+        }
+
+        private void finish() {
+            done = true;
+            onDone.run();
+        }
+    }
 }
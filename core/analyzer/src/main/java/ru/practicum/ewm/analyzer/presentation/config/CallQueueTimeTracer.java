@@ -0,0 +1,52 @@
+package ru.practicum.ewm.analyzer.presentation.config;
+
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerStreamTracer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long calls wait for a thread of the server executor: the tracer stamps a call when
+ * its stream is created on the transport thread, the interceptor records the wait once the call
+ * starts on the executor.
+ */
+class CallQueueTimeTracer extends ServerStreamTracer.Factory implements ServerInterceptor {
+
+    private static final Context.Key<Long> RECEIVED_AT = Context.key("analyzer-call-received-at");
+
+    private final MeterRegistry meterRegistry;
+
+    CallQueueTimeTracer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+        long receivedAt = System.nanoTime();
+        return new ServerStreamTracer() {
+            @Override
+            public Context filterContext(Context context) {
+                return context.withValue(RECEIVED_AT, receivedAt);
+            }
+        };
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+        ServerCallHandler<ReqT, RespT> next) {
+        Long receivedAt = RECEIVED_AT.get();
+        if (receivedAt != null) {
+            Timer.builder("analyzer.grpc.queue-time")
+                .description("Time calls waited for a server executor thread")
+                .tag("method", call.getMethodDescriptor().getBareMethodName())
+                .register(meterRegistry)
+                .record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+        }
+        return next.startCall(call, headers);
+    }
+}
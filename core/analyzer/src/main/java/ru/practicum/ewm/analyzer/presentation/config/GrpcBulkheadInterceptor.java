@@ -0,0 +1,102 @@
+package ru.practicum.ewm.analyzer.presentation.config;
+
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits the calls running at the same time per group of methods and rejects the excess at once
+ * with {@code RESOURCE_EXHAUSTED}, so that a burst of expensive calls cannot take every database
+ * connection. The client's fallback answers the rejected calls.
+ * <p>
+ * A permit is held until the call is over, which includes the chunks a streaming method sends after
+ * its handler has returned; streaming methods bound that by {@code grpc-execution.stream-timeout}.
+ */
+@Slf4j
+class GrpcBulkheadInterceptor implements ServerInterceptor {
+
+    private final Map<String, Bulkhead> bulkheadsByMethod = new HashMap<>();
+
+    GrpcBulkheadInterceptor(Map<String, GrpcExecutionProperties.Bulkhead> bulkheads, MeterRegistry meterRegistry) {
+        bulkheads.forEach((name, properties) -> {
+            Bulkhead bulkhead = new Bulkhead(name, properties.getMaxConcurrentCalls(), meterRegistry);
+            properties.getMethods().forEach(method -> bulkheadsByMethod.put(method, bulkhead));
+        });
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+        ServerCallHandler<ReqT, RespT> next) {
+        Bulkhead bulkhead = bulkheadsByMethod.get(call.getMethodDescriptor().getBareMethodName());
+        if (bulkhead == null) {
+            return next.startCall(call, headers);
+        }
+        if (!bulkhead.permits.tryAcquire()) {
+            bulkhead.rejected.increment();
+            log.debug("Rejected {}, bulkhead {} is full", call.getMethodDescriptor().getFullMethodName(), bulkhead.name);
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription("Too many concurrent calls, bulkhead " + bulkhead.name),
+                new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.permits.release();
+            }
+        };
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(call, headers);
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                release.run();
+                super.onCancel();
+            }
+
+            @Override
+            public void onComplete() {
+                release.run();
+                super.onComplete();
+            }
+        };
+    }
+
+    private static final class Bulkhead {
+
+        private final String name;
+        private final Semaphore permits;
+        private final Counter rejected;
+
+        private Bulkhead(String name, int maxConcurrentCalls, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.permits = new Semaphore(maxConcurrentCalls);
+            this.rejected = Counter.builder("analyzer.grpc.bulkhead.rejected")
+                .description("Calls rejected because the bulkhead was full")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+            Gauge.builder("analyzer.grpc.bulkhead.in-flight", permits,
+                    semaphore -> maxConcurrentCalls - semaphore.availablePermits())
+                .description("Calls running in the bulkhead")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.practicum.ewm.analyzer.presentation.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "grpc-execution")
+@Getter
+@Setter
+public class GrpcExecutionProperties {
+
+    private ExecutorType executor = ExecutorType.DEFAULT;
+    /**
+     * Number of threads of the {@code FIXED} executor.
+     */
+    private int fixedThreads = 16;
+    /**
+     * Bulkheads by name. A call to a method of a bulkhead that is full is rejected at once with
+     * {@code RESOURCE_EXHAUSTED}; methods without a bulkhead are not limited.
+     */
+    private Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+    /**
+     * Events looked up per query by the streaming methods. The next chunk is read only once the
+     * previous one has been accepted by the transport.
+     */
+    private int streamChunkSize = 500;
+    /**
+     * Longest time a streaming method may take to send all its chunks. A stream still running then,
+     * typically because the client stopped reading, fails with {@code DEADLINE_EXCEEDED} and frees
+     * its bulkhead permit.
+     */
+    private Duration streamTimeout = Duration.ofSeconds(10);
+
+    public enum ExecutorType {
+        /**
+         * The cached thread pool of grpc-java.
+         */
+        DEFAULT,
+        /**
+         * A new virtual thread per call; concurrency is bounded by the bulkheads only.
+         */
+        VIRTUAL,
+        /**
+         * A fixed pool of {@code fixedThreads} platform threads with an unbounded queue.
+         */
+        FIXED
+    }
+
+    @Getter
+    @Setter
+    public static class Bulkhead {
+        /**
+         * Calls of the bulkhead's methods allowed to run at the same time.
+         */
+        private int maxConcurrentCalls = 10;
+        /**
+         * Bare method names sharing the limit, e.g. {@code GetRecommendationsForUser}.
+         */
+        private List<String> methods = new ArrayList<>();
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.ewm.analyzer.presentation.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+@Configuration
+@EnableConfigurationProperties(GrpcExecutionProperties.class)
+public class GrpcServerExecutionConfig {
+
+    // Runs first, so the queue time of rejected calls is recorded too
+    @GrpcGlobalServerInterceptor
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    CallQueueTimeTracer callQueueTimeTracer(MeterRegistry meterRegistry) {
+        return new CallQueueTimeTracer(meterRegistry);
+    }
+
+    @GrpcGlobalServerInterceptor
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    GrpcBulkheadInterceptor bulkheadInterceptor(GrpcExecutionProperties properties, MeterRegistry meterRegistry) {
+        return new GrpcBulkheadInterceptor(properties.getBulkheads(), meterRegistry);
+    }
+
+    @Bean
+    GrpcServerExecutorConfigurer grpcServerExecutorConfigurer(GrpcExecutionProperties properties,
+        CallQueueTimeTracer callQueueTimeTracer) {
+        return new GrpcServerExecutorConfigurer(properties, callQueueTimeTracer);
+    }
+}
@@ -0,0 +1,47 @@
+package ru.practicum.ewm.analyzer.presentation.config;
+
+import io.grpc.ServerBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Runs the calls on the configured executor and stamps them for the queue time metric.
+ */
+class GrpcServerExecutorConfigurer implements GrpcServerConfigurer, DisposableBean {
+
+    private final CallQueueTimeTracer queueTimeTracer;
+    // null for the default executor of grpc-java
+    private final ExecutorService executor;
+
+    GrpcServerExecutorConfigurer(GrpcExecutionProperties properties, CallQueueTimeTracer queueTimeTracer) {
+        this.queueTimeTracer = queueTimeTracer;
+        this.executor = switch (properties.getExecutor()) {
+            case DEFAULT -> null;
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("grpc-call-", 0).factory());
+            case FIXED -> {
+                AtomicInteger threads = new AtomicInteger();
+                yield Executors.newFixedThreadPool(properties.getFixedThreads(),
+                    runnable -> new Thread(runnable, "grpc-call-" + threads.getAndIncrement()));
+            }
+        };
+    }
+
+    @Override
+    public void accept(ServerBuilder<?> serverBuilder) {
+        if (executor != null) {
+            serverBuilder.executor(executor);
+        }
+        serverBuilder.addStreamTracerFactory(queueTimeTracer);
+    }
+
+    // The gRPC server is stopped first, it does not shut down an executor it was given
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+-- Schema previously generated by Hibernate from the analyzer entities. Databases created by
+-- Hibernate are baselined at version 0, so this runs on them as well and only adds what is missing.
+
+CREATE TABLE IF NOT EXISTS event_similarities
+(
+    id      BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_a BIGINT           NOT NULL, -- The smaller ID
+    event_b BIGINT           NOT NULL, -- The larger ID
+    score   DOUBLE PRECISION NOT NULL,
+    CONSTRAINT uk_event_similarities_pair UNIQUE (event_a, event_b)
+);
+
+CREATE TABLE IF NOT EXISTS user_interactions
+(
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id          BIGINT                   NOT NULL,
+    event_id         BIGINT                   NOT NULL,
+    weight           DOUBLE PRECISION         NOT NULL,
+    interaction_time TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Hibernate did not enforce one interaction per pair: keep the strongest, then the latest row, with
+-- the latest time of the pair as the upsert would have kept it
+UPDATE user_interactions ui
+SET interaction_time = latest.interaction_time
+FROM (SELECT user_id, event_id, MAX(interaction_time) AS interaction_time
+      FROM user_interactions
+      GROUP BY user_id, event_id
+      HAVING COUNT(*) > 1) latest
+WHERE ui.user_id = latest.user_id
+  AND ui.event_id = latest.event_id
+  AND ui.interaction_time < latest.interaction_time;
+
+DELETE FROM user_interactions ui
+USING user_interactions other
+WHERE ui.user_id = other.user_id
+  AND ui.event_id = other.event_id
+  AND (ui.weight < other.weight OR ui.weight = other.weight AND ui.id < other.id);
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'uk_user_interactions_user_event') THEN
+        ALTER TABLE user_interactions
+            ADD CONSTRAINT uk_user_interactions_user_event UNIQUE (user_id, event_id);
+    END IF;
+END $$;
+
+CREATE TABLE IF NOT EXISTS event_ratings
+(
+    event_id BIGINT PRIMARY KEY,
+    rating   DOUBLE PRECISION NOT NULL
+);
@@ -0,0 +1,9 @@
+-- Neighbours of an event by descending score, whichever side of the pair it is stored on
+CREATE INDEX IF NOT EXISTS idx_event_similarities_a_score ON event_similarities (event_a, score DESC);
+CREATE INDEX IF NOT EXISTS idx_event_similarities_b_score ON event_similarities (event_b, score DESC);
+
+-- A user's most recent interactions
+CREATE INDEX IF NOT EXISTS idx_user_interactions_user_time ON user_interactions (user_id, interaction_time DESC);
+
+-- Interactions with an event, covering the user for the rating and co-interaction lookups
+CREATE INDEX IF NOT EXISTS idx_user_interactions_event_user ON user_interactions (event_id, user_id);
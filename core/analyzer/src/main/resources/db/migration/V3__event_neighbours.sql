@@ -0,0 +1,26 @@
+-- The best neighbours of every event, one row per event, best first. Rows are rewritten whenever
+-- the scores of an event change, the free space keeps the updates on the same page.
+CREATE TABLE IF NOT EXISTS event_neighbours
+(
+    event_id      BIGINT PRIMARY KEY,
+    neighbour_ids BIGINT[] NOT NULL,
+    scores        REAL[]   NOT NULL
+) WITH (fillfactor = 70);
+
+-- 50 is the default of recommendations.neighbour-lists.max-neighbours, later refreshes apply the configured size
+INSERT INTO event_neighbours (event_id, neighbour_ids, scores)
+SELECT event_id,
+       array_agg(neighbour_id ORDER BY score DESC, neighbour_id),
+       array_agg(score::REAL ORDER BY score DESC, neighbour_id)
+FROM (
+    SELECT event_id, neighbour_id, score,
+           ROW_NUMBER() OVER (PARTITION BY event_id ORDER BY score DESC, neighbour_id) AS rank
+    FROM (
+        SELECT event_a AS event_id, event_b AS neighbour_id, score FROM event_similarities
+        UNION ALL
+        SELECT event_b, event_a, score FROM event_similarities
+    ) pairs
+) ranked
+WHERE rank <= 50
+GROUP BY event_id
+ON CONFLICT (event_id) DO NOTHING;
@@ -0,0 +1,8 @@
+-- Ratings used to be maintained only from the actions consumed after event_ratings was added.
+-- A rating is the sum of the users' maximum weights, so it is recomputed from the interactions.
+INSERT INTO event_ratings (event_id, rating)
+SELECT event_id, SUM(weight)
+FROM user_interactions
+GROUP BY event_id
+ON CONFLICT (event_id) DO UPDATE
+SET rating = EXCLUDED.rating;
@@ -0,0 +1,119 @@
+package ru.practicum.ewm.analyzer.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.domain.EventSimilarity;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+
+/**
+ * Invalidations that run while predictions are being computed are simulated from inside the loader.
+ */
+class PredictionCacheTest {
+
+    private static final long USER = 7;
+    private static final long BASIS_EVENT = 100;
+    private static final long OTHER_EVENT = 200;
+
+    private PredictionCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        RecommendationProperties properties = new RecommendationProperties();
+        properties.getPredictionCache().setEnabled(true);
+        cache = new PredictionCache(properties, new SimpleMeterRegistry());
+        loads.set(0);
+    }
+
+    @Test
+    void cachesUntilTheUserIsInvalidated() {
+        get(() -> { });
+        get(() -> { });
+        assertThat(loads).hasValue(1);
+
+        cache.invalidateUser(USER);
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void doesNotCacheWhenTheUserIsInvalidatedDuringTheLoad() {
+        get(() -> cache.invalidateUser(USER));
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void tracksTheUserAgainAfterARacingInvalidation() {
+        get(() -> cache.invalidateUser(USER));
+        get(() -> { });
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+
+        // Used to find no sizes for the user and keep serving the cached predictions
+        cache.invalidateUser(USER);
+        get(() -> { });
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void doesNotCacheWhenABasisEventChangesDuringTheLoad() {
+        get(() -> cache.onEventsChanged(List.of(BASIS_EVENT)));
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void doesNotCacheWhenBasisSimilaritiesArePersistedDuringTheLoad() {
+        get(() -> cache.onSimilaritiesChanged(List.of(new EventSimilarity(null, OTHER_EVENT, BASIS_EVENT, 0.5))));
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void cachesWhenAnUnrelatedEventChangesDuringTheLoad() {
+        get(() -> cache.onEventsChanged(List.of(OTHER_EVENT)));
+        get(() -> { });
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void recomputesPredictionsWhoseBasisEventChanged() {
+        get(() -> { });
+        cache.onEventsChanged(List.of(BASIS_EVENT));
+        get(() -> { });
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void doesNotCacheWhenEverythingIsInvalidatedDuringTheLoad() {
+        get(cache::invalidateAll);
+        get(() -> { });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void otherUsersAreNotAffected() {
+        get(() -> { });
+        cache.invalidateUser(USER + 1);
+        get(() -> { });
+        assertThat(loads).hasValue(1);
+    }
+
+    private void get(Runnable duringLoad) {
+        Supplier<PredictionCache.Prediction> loader = () -> {
+            loads.incrementAndGet();
+            duringLoad.run();
+            return new PredictionCache.Prediction(List.of(new Recommendation(OTHER_EVENT, 1.0)), List.of(BASIS_EVENT));
+        };
+        cache.get(USER, 10, loader);
+    }
+}
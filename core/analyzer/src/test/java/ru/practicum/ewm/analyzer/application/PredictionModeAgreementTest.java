@@ -0,0 +1,100 @@
+package ru.practicum.ewm.analyzer.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties;
+import ru.practicum.ewm.analyzer.application.config.RecommendationProperties.PredictionMode;
+import ru.practicum.ewm.analyzer.domain.Recommendation;
+import ru.practicum.ewm.analyzer.infrastructure.persistence.JdbcEventNeighboursRepository;
+import ru.practicum.ewm.analyzer.infrastructure.persistence.JdbcPredictionRepository;
+
+/**
+ * Checks that the single statement of {@link PredictionMode#SINGLE_QUERY} predicts exactly what the
+ * stepwise queries and the scoring in {@link RecommendationsService} predict.
+ */
+@DataJpaTest(properties = {
+    "spring.config.import=",
+    "spring.cloud.config.enabled=false",
+    "eureka.client.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Import({RecommendationsService.class, JdbcPredictionRepository.class, JdbcEventNeighboursRepository.class,
+    SimilarityIndex.class, PredictionCache.class, SimpleMeterRegistry.class})
+class PredictionModeAgreementTest {
+
+    private static final int USERS = 40;
+    private static final int MAX_RESULTS = 10;
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16.1");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @Autowired
+    private RecommendationsService recommendationsService;
+
+    @Autowired
+    private RecommendationProperties properties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Rolled back after every test
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.execute("SELECT setseed(0.42)");
+        jdbcTemplate.execute("""
+            INSERT INTO event_similarities (event_a, event_b, score)
+            SELECT a, b, random()
+            FROM generate_series(1, 120) a, generate_series(1, 120) b
+            WHERE a < b AND random() < 0.3
+            """);
+        // Distinct times, so that both modes agree on the recent events
+        jdbcTemplate.execute("""
+            INSERT INTO user_interactions (user_id, event_id, weight, interaction_time)
+            SELECT u, e, (1 + floor(random() * 3)) * 0.4, now() - (u * 1000 + e) * INTERVAL '1 second'
+            FROM generate_series(1, %d) u, generate_series(1, 120) e
+            WHERE random() < 0.15
+            """.formatted(USERS));
+    }
+
+    @Test
+    void stepwiseAndSingleQueryPredictTheSame() {
+        for (long userId = 1; userId <= USERS; userId++) {
+            properties.setPredictionMode(PredictionMode.STEPWISE);
+            List<Recommendation> stepwise = recommendationsService.getUserPredictions(userId, MAX_RESULTS);
+            properties.setPredictionMode(PredictionMode.SINGLE_QUERY);
+            List<Recommendation> singleQuery = recommendationsService.getUserPredictions(userId, MAX_RESULTS);
+
+            assertThat(singleQuery).as("predictions of user %d", userId).hasSameSizeAs(stepwise);
+            for (int i = 0; i < stepwise.size(); i++) {
+                assertThat(singleQuery.get(i).getEventId()).as("rank %d of user %d", i, userId)
+                    .isEqualTo(stepwise.get(i).getEventId());
+                assertThat(singleQuery.get(i).getScore()).as("score at rank %d of user %d", i, userId)
+                    .isCloseTo(stepwise.get(i).getScore(), within(1e-9));
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ru.practicum.ewm.analyzer.infrastructure.persistence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Pins the plans of the hot lookups to the indexes created by the migrations, so that a changed
+ * query or a dropped index shows up as a sequential scan here instead of in production latency.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class QueryPlanTest {
+
+    // Same statement as the JPQL of JpaUserInteractionRepository#findRecentlyInteractedEvents
+    private static final String RECENT_EVENTS_SQL = """
+        SELECT event_id
+        FROM user_interactions
+        WHERE user_id = ?
+        ORDER BY interaction_time DESC
+        LIMIT ?
+        """;
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16.1");
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void migrateAndSeed() throws SQLException {
+        Flyway.configure()
+            .dataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())
+            .locations("classpath:db/migration")
+            .load()
+            .migrate();
+
+        connection = DriverManager.getConnection(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(),
+            POSTGRES.getPassword());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                INSERT INTO event_similarities (event_a, event_b, score)
+                SELECT a, b, random()
+                FROM generate_series(1, 300) a, generate_series(1, 300) b
+                WHERE a < b
+                """);
+            statement.execute("""
+                INSERT INTO user_interactions (user_id, event_id, weight, interaction_time)
+                SELECT u, e, 1.0, now() - (u * e) * INTERVAL '1 second'
+                FROM generate_series(1, 1000) u, generate_series(1, 50) e
+                """);
+            statement.execute("""
+                INSERT INTO event_ratings (event_id, rating)
+                SELECT e, random() * 100
+                FROM generate_series(1, 10000) e
+                """);
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    void topSimilarExcludingReadsBothSidesThroughTheScoreIndexes() throws SQLException {
+        String plan = explain(EventSimilarityLookupRepositoryImpl.TOP_SIMILAR_EXCLUDING_SQL, 150L, 150L,
+            List.of(1L, 2L, 3L), 10);
+
+        assertThat(plan).doesNotContain("Seq Scan on event_similarities");
+        assertThat(plan).contains("idx_event_similarities_b_score");
+    }
+
+    @Test
+    void topSimilarToSetAvoidsScanningTheSimilarities() throws SQLException {
+        String plan = explain(EventSimilarityLookupRepositoryImpl.TOP_SIMILAR_TO_SET_SQL, List.of(10L, 20L),
+            List.of(10L, 20L), List.of(10L, 20L), List.of(10L, 20L), 10);
+
+        assertThat(plan).doesNotContain("Seq Scan on event_similarities");
+    }
+
+    @Test
+    void interactionWeightsUseTheUniquePair() throws SQLException {
+        String plan = explain(UserInteractionLookupRepositoryImpl.WEIGHTS_SQL, 42L, List.of(1L, 2L, 3L));
+
+        assertThat(plan).doesNotContain("Seq Scan on user_interactions");
+        assertThat(plan).contains("uk_user_interactions_user_event");
+    }
+
+    @Test
+    void recentEventsComeFromTheUserTimeIndex() throws SQLException {
+        String plan = explain(RECENT_EVENTS_SQL, 42L, 20);
+
+        assertThat(plan).doesNotContain("Seq Scan on user_interactions");
+        assertThat(plan).doesNotContain("Sort");
+        assertThat(plan).contains("idx_user_interactions_user_time");
+    }
+
+    @Test
+    void ratingsArePrimaryKeyLookups() throws SQLException {
+        String plan = explain(EventRatingLookupRepositoryImpl.RATINGS_SQL, List.of(1L, 2L, 3L));
+
+        assertThat(plan).doesNotContain("Seq Scan on event_ratings");
+    }
+
+    private static String explain(String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] instanceof List<?> ids) {
+                    statement.setArray(i + 1, connection.createArrayOf("bigint", ids.toArray()));
+                } else {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    plan.append(rows.getString(1)).append('\n');
+                }
+            }
+            return plan.toString();
+        }
+    }
+}
@@ -2,10 +2,13 @@ package ru.practicum.ewm.collector;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import ru.practicum.ewm.collector.application.config.CollectorProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(CollectorProperties.class)
 public class CollectorApplication {
     public static void main(String[] args) {
         SpringApplication.run(CollectorApplication.class, args);
     }
-}
\ No newline at end of file
+}
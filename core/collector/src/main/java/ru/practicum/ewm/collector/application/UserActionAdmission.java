@@ -0,0 +1,104 @@
+package ru.practicum.ewm.collector.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.collector.application.config.CollectorProperties;
+import ru.practicum.ewm.stats.grpc.ActionTypeProto;
+
+/**
+ * Admission control for incoming user actions, based on a budget of Kafka sends in flight.
+ * <p>
+ * Registrations and likes are always admitted. Views are admitted freely while the in-flight
+ * count stays below {@code viewSamplingThreshold * maxInFlight}, sampled with
+ * {@code viewSampleRate} above it, and shed once the budget is exhausted.
+ * <p>
+ * Every admitted action holds one in-flight slot until {@link #release(int)} is called
+ * on completion of its Kafka send, or, if it was spooled, once the spool forwarder has delivered it.
+ */
+@Component
+@Slf4j
+public class UserActionAdmission {
+
+    private final int maxInFlight;
+    private final int viewSamplingLimit;
+    private final double viewSampleRate;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<ActionTypeProto, Counter> admittedCounters = new EnumMap<>(ActionTypeProto.class);
+    private final Map<ActionTypeProto, Counter> shedCounters = new EnumMap<>(ActionTypeProto.class);
+
+    public UserActionAdmission(CollectorProperties properties, MeterRegistry meterRegistry) {
+        CollectorProperties.Admission admission = properties.getAdmission();
+        this.maxInFlight = admission.getMaxInFlight();
+        this.viewSamplingLimit = (int) (admission.getMaxInFlight() * admission.getViewSamplingThreshold());
+        this.viewSampleRate = admission.getViewSampleRate();
+
+        Gauge.builder("collector.admission.in-flight", inFlight, AtomicInteger::get)
+            .description("User actions sent to Kafka and not yet acknowledged")
+            .register(meterRegistry);
+        for (ActionTypeProto actionType : ActionTypeProto.values()) {
+            if (actionType == ActionTypeProto.UNRECOGNIZED) {
+                continue;
+            }
+            admittedCounters.put(actionType, Counter.builder("collector.admission.admitted")
+                .tag("action", actionType.name())
+                .register(meterRegistry));
+            shedCounters.put(actionType, Counter.builder("collector.admission.shed")
+                .tag("action", actionType.name())
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Decides whether an action of the given type may be sent to Kafka right now.
+     *
+     * @param actionType The type of the incoming action.
+     * @return {@code true} if the action was admitted and holds an in-flight slot,
+     *         {@code false} if it has to be shed.
+     */
+    public boolean tryAdmit(ActionTypeProto actionType) {
+        if (actionType == ActionTypeProto.ACTION_VIEW && !admitView()) {
+            count(shedCounters, actionType);
+            return false;
+        }
+        inFlight.incrementAndGet();
+        count(admittedCounters, actionType);
+        return true;
+    }
+
+    /**
+     * Returns in-flight slots once the corresponding Kafka sends have completed, successfully or not.
+     *
+     * @param permits The number of admitted actions whose sends have completed.
+     */
+    public void release(int permits) {
+        inFlight.addAndGet(-permits);
+    }
+
+    private boolean admitView() {
+        int current = inFlight.get();
+        if (current < viewSamplingLimit) {
+            return true;
+        }
+        if (current >= maxInFlight) {
+            log.debug("In-flight budget of {} exhausted, shedding view.", maxInFlight);
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < viewSampleRate;
+    }
+
+    private void count(Map<ActionTypeProto, Counter> counters, ActionTypeProto actionType) {
+        Counter counter = counters.get(actionType);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
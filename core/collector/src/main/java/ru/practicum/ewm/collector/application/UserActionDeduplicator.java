@@ -0,0 +1,195 @@
+package ru.practicum.ewm.collector.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.collector.application.config.CollectorProperties;
+import ru.practicum.ewm.stats.grpc.ActionTypeProto;
+import ru.practicum.ewm.stats.grpc.UserActionProto;
+
+/**
+ * Suppresses user actions that cannot raise the weight of a (user, event) pair.
+ * <p>
+ * Downstream, a pair's weight only ever grows to the weight of its strongest action
+ * (VIEW &lt; REGISTER &lt; LIKE, which is also the order of {@link ActionTypeProto} numbers).
+ * An action no stronger than one already accepted for the same pair is therefore pure waste.
+ * <p>
+ * Accepted pairs are kept in two generations: the current one and the previous one.
+ * The generations rotate once per {@code window}, or earlier if the current one reaches
+ * {@code maxEntries}, so memory stays bounded and a pair is forgotten at most two windows
+ * after it was last seen.
+ * <p>
+ * A generation is an open-addressing table of primitive longs, each slot holding a 62-bit
+ * fingerprint of the pair and its strongest action, so lookups allocate nothing. Like a Bloom
+ * filter it may confuse two pairs whose fingerprints collide, which at 62 bits is negligible.
+ */
+@Component
+@Slf4j
+public class UserActionDeduplicator {
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxEntries;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    private final Map<ActionTypeProto, Counter> suppressedCounters = new EnumMap<>(ActionTypeProto.class);
+    private final Counter checkedCounter;
+
+    public UserActionDeduplicator(CollectorProperties properties, MeterRegistry meterRegistry) {
+        CollectorProperties.Dedup dedup = properties.getDedup();
+        this.enabled = dedup.isEnabled();
+        this.windowNanos = dedup.getWindow().toNanos();
+        this.maxEntries = dedup.getMaxEntries();
+        this.current = newGeneration();
+        this.previous = newGeneration();
+
+        this.checkedCounter = Counter.builder("collector.dedup.checked")
+            .description("User actions checked for duplicates")
+            .register(meterRegistry);
+        for (ActionTypeProto actionType : ActionTypeProto.values()) {
+            if (actionType != ActionTypeProto.UNRECOGNIZED) {
+                suppressedCounters.put(actionType, Counter.builder("collector.dedup.suppressed")
+                    .description("User actions suppressed because they cannot raise the pair's weight")
+                    .tag("action", actionType.name())
+                    .register(meterRegistry));
+            }
+        }
+        Gauge.builder("collector.dedup.tracked-pairs", this, d -> d.current.size.get() + d.previous.size.get())
+            .description("(user, event) pairs remembered by the deduplicator")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Checks whether an action of at least the same strength was recently accepted for the same
+     * (user, event) pair. Suppressed actions are counted.
+     *
+     * @param action The incoming user action.
+     * @return {@code true} if the action cannot raise the pair's weight and should be dropped.
+     */
+    public boolean isRedundant(UserActionProto action) {
+        if (!enabled) {
+            return false;
+        }
+        checkedCounter.increment();
+        rotateIfDue();
+
+        long key = fingerprint(action.getUserId(), action.getEventId());
+        int strongest = Math.max(current.strongest(key), previous.strongest(key));
+        if (strongest < action.getActionTypeValue()) {
+            return false;
+        }
+
+        Counter counter = suppressedCounters.get(action.getActionType());
+        if (counter != null) {
+            counter.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Remembers an action that has been accepted for delivery.
+     *
+     * @param action The accepted user action.
+     */
+    public void remember(UserActionProto action) {
+        if (!enabled) {
+            return;
+        }
+        current.remember(fingerprint(action.getUserId(), action.getEventId()), action.getActionTypeValue());
+    }
+
+    private void rotateIfDue() {
+        Generation generation = current;
+        if (System.nanoTime() - generation.startedAt < windowNanos && generation.size.get() < maxEntries) {
+            return;
+        }
+        synchronized (this) {
+            if (current == generation) {
+                previous = generation;
+                current = newGeneration();
+                log.debug("Rotated deduplication window, {} pairs moved to the previous generation.",
+                    generation.size.get());
+            }
+        }
+    }
+
+    private Generation newGeneration() {
+        // At most half full, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+        return new Generation(System.nanoTime(), capacity);
+    }
+
+    // Low two bits are left free for the action strength
+    private static long fingerprint(long userId, long eventId) {
+        long hash = userId * 0x9E3779B97F4A7C15L + eventId;
+        hash ^= hash >>> 33;
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        hash ^= hash >>> 29;
+        return hash << 2;
+    }
+
+    /**
+     * A slot holds {@code fingerprint | (strength + 1)}; zero marks an empty slot.
+     */
+    private static final class Generation {
+        private static final long STRENGTH_MASK = 0b11;
+
+        private final long startedAt;
+        private final AtomicLongArray slots;
+        private final int mask;
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Generation(long startedAt, int capacity) {
+            this.startedAt = startedAt;
+            this.slots = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private int strongest(long key) {
+            for (int i = index(key), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long slot = slots.get(i);
+                if (slot == 0) {
+                    return -1;
+                }
+                if ((slot & ~STRENGTH_MASK) == key) {
+                    return (int) (slot & STRENGTH_MASK) - 1;
+                }
+            }
+            return -1;
+        }
+
+        private void remember(long key, int strength) {
+            long entry = key | (strength + 1);
+            for (int i = index(key), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long slot = slots.get(i);
+                if (slot == 0) {
+                    if (slots.compareAndSet(i, 0, entry)) {
+                        size.incrementAndGet();
+                        return;
+                    }
+                    slot = slots.get(i);
+                }
+                if ((slot & ~STRENGTH_MASK) == key) {
+                    // Only ever raise the strength
+                    while ((slot & STRENGTH_MASK) < (entry & STRENGTH_MASK) && !slots.compareAndSet(i, slot, entry)) {
+                        slot = slots.get(i);
+                    }
+                    return;
+                }
+            }
+            // Full table: the pair is simply not remembered until the next rotation
+        }
+
+        private int index(long key) {
+            return (int) (key >>> 2 ^ key >>> 34) & mask;
+        }
+    }
+}
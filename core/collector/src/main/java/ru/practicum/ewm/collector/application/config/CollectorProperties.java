@@ -0,0 +1,83 @@
+package ru.practicum.ewm.collector.application.config;
+
+import java.time.Duration;
+import java.nio.file.Path;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "collector")
+@Getter
+@Setter
+public class CollectorProperties {
+
+    private Batch batch = new Batch();
+    private Admission admission = new Admission();
+    private Dedup dedup = new Dedup();
+    private Spool spool = new Spool();
+
+    @Getter
+    @Setter
+    public static class Batch {
+        /**
+         * Maximum number of streamed actions buffered before they are handed to Kafka as one batch.
+         */
+        private int maxSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class Admission {
+        /**
+         * Budget of user actions sent to Kafka but not yet acknowledged by the broker.
+         */
+        private int maxInFlight = 5_000;
+        /**
+         * Share of the in-flight budget after which views are only sampled.
+         */
+        private double viewSamplingThreshold = 0.7;
+        /**
+         * Probability of admitting a view while sampling.
+         */
+        private double viewSampleRate = 0.2;
+    }
+
+    @Getter
+    @Setter
+    public static class Dedup {
+        private boolean enabled = true;
+        /**
+         * How long a (user, event) pair is remembered after its last accepted action.
+         */
+        private Duration window = Duration.ofMinutes(10);
+        /**
+         * Upper bound of pairs tracked per window generation.
+         */
+        private int maxEntries = 500_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Spool {
+        private boolean enabled = false;
+        /**
+         * Must survive restarts and must not be cleaned up behind the spool's back, so not a temp directory.
+         * Relative to the working directory unless absolute; deployments set a path on a persistent volume.
+         */
+        private Path directory = Path.of("spool");
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        /**
+         * Segments allowed on disk; when they are all in use, actions bypass the spool.
+         */
+        private int maxSegments = 16;
+        private int forwardBatchSize = 500;
+        private Duration pollInterval = Duration.ofMillis(20);
+        private Duration sendTimeout = Duration.ofSeconds(10);
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        /**
+         * How long shutdown waits for the forwarder to leave an interrupted send.
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(5);
+    }
+}
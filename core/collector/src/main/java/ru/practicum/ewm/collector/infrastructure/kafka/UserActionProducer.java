@@ -1,5 +1,7 @@
 package ru.practicum.ewm.collector.infrastructure.kafka;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -21,10 +23,10 @@ public class UserActionProducer {
         this.kafkaTemplate = kafkaTemplate;
     }
 
-    public void sendUserAction(UserActionAvro userAction) {
+    public CompletableFuture<?> sendUserAction(UserActionAvro userAction) {
         log.info("Sending user action to Kafka topic '{}': {}", userActionsTopic, userAction);
 
-        kafkaTemplate.send(userActionsTopic, userAction)
+        return kafkaTemplate.send(userActionsTopic, partitionKey(userAction), userAction)
             .whenComplete((result, ex) -> {
                 if (ex == null) {
                     log.info("Successfully sent user action to offset {}",
@@ -34,4 +36,29 @@ public class UserActionProducer {
                 }
             });
     }
+
+    public CompletableFuture<Void> sendUserActions(List<UserActionAvro> userActions) {
+        if (userActions.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        log.info("Sending batch of {} user actions to Kafka topic '{}'", userActions.size(), userActionsTopic);
+
+        // Records are handed to the producer back-to-back, so they share its record batches
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[userActions.size()];
+        for (int i = 0; i < sends.length; i++) {
+            UserActionAvro userAction = userActions.get(i);
+            sends[i] = kafkaTemplate.send(userActionsTopic, partitionKey(userAction), userAction)
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        log.error("Failed to send user action {}: {}", userAction, ex.getMessage());
+                    }
+                });
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+    // Keying by user keeps each user's actions in one partition, so consumers see them in order
+    private static String partitionKey(UserActionAvro userAction) {
+        return Long.toString(userAction.getUserId());
+    }
 }
@@ -2,6 +2,7 @@ package ru.practicum.ewm.collector.infrastructure.mapper;
 
 import com.google.protobuf.Timestamp;
 import java.time.Instant;
+import java.util.List;
 import org.mapstruct.Mapper;
 import ru.practicum.ewm.stats.grpc.ActionTypeProto;
 import ru.practicum.ewm.stats.grpc.UserActionProto;
@@ -13,6 +14,8 @@ public interface UserActionMapper {
 
     UserActionAvro toAvro(UserActionProto userActionProto);
 
+    List<UserActionAvro> toAvro(List<UserActionProto> userActionProtos);
+
     default ActionTypeAvro toAvroActionType(ActionTypeProto actionTypeProto) {
         if (actionTypeProto == null) {
             throw new IllegalArgumentException("ActionTypeProto cannot be null.");
@@ -0,0 +1,130 @@
+package ru.practicum.ewm.collector.infrastructure.spool;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.collector.application.UserActionAdmission;
+import ru.practicum.ewm.collector.application.config.CollectorProperties;
+import ru.practicum.ewm.collector.infrastructure.kafka.UserActionProducer;
+import ru.practicum.ewm.collector.infrastructure.mapper.UserActionMapper;
+import ru.practicum.ewm.stats.grpc.UserActionProto;
+
+/**
+ * Background forwarder draining the {@link UserActionSpool} to Kafka in append order.
+ * <p>
+ * A batch is committed in the spool only after Kafka has acknowledged all of its records.
+ * On failure the same batch is replayed after {@code retryBackoff}, so delivery is at-least-once.
+ * Duplicates are harmless downstream because a pair's weight only ever takes the maximum.
+ * <p>
+ * Actions spooled by this process hold a {@link UserActionAdmission} slot until their batch is
+ * committed, so a growing backlog makes admission sample and shed views like slow direct sends do.
+ */
+@Component
+@Slf4j
+public class SpoolForwarder implements SmartLifecycle {
+
+    private final UserActionSpool spool;
+    private final UserActionProducer producer;
+    private final UserActionMapper mapper;
+    private final UserActionAdmission admission;
+    private final CollectorProperties.Spool properties;
+
+    private final Counter forwardedCounter;
+    private final Counter retriesCounter;
+
+    private volatile Thread worker;
+
+    public SpoolForwarder(UserActionSpool spool, UserActionProducer producer, UserActionMapper mapper,
+        UserActionAdmission admission, CollectorProperties properties, MeterRegistry meterRegistry) {
+        this.spool = spool;
+        this.producer = producer;
+        this.mapper = mapper;
+        this.admission = admission;
+        this.properties = properties.getSpool();
+
+        this.forwardedCounter = Counter.builder("collector.spool.forwarded")
+            .description("Spooled user actions acknowledged by Kafka")
+            .register(meterRegistry);
+        this.retriesCounter = Counter.builder("collector.spool.retries")
+            .description("Spooled batches that had to be replayed")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        if (!spool.isEnabled()) {
+            return;
+        }
+        worker = new Thread(this::forward, "collector-spool-forwarder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread current = worker;
+        worker = null;
+        if (current == null) {
+            return;
+        }
+        current.interrupt();
+        try {
+            // An interrupted send leaves its batch uncommitted, so it is replayed after a restart
+            current.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (current.isAlive()) {
+            log.warn("Spool forwarder did not stop within {}.", properties.getShutdownTimeout());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return worker != null;
+    }
+
+    private void forward() {
+        log.info("Spool forwarder started.");
+        while (worker == Thread.currentThread()) {
+            try {
+                List<UserActionProto> batch = spool.peek(properties.getForwardBatchSize());
+                if (batch.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(properties.getPollInterval().toMillis());
+                    continue;
+                }
+                producer.sendUserActions(mapper.toAvro(batch))
+                    .get(properties.getSendTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                admission.release(spool.commit());
+                forwardedCounter.increment(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException | RuntimeException e) {
+                retriesCounter.increment();
+                log.warn("Failed to forward spooled user actions to Kafka, retrying in {}: {}",
+                    properties.getRetryBackoff(), e.getMessage());
+                if (!backOff()) {
+                    break;
+                }
+            }
+        }
+        log.info("Spool forwarder stopped.");
+    }
+
+    private boolean backOff() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(properties.getRetryBackoff().toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package ru.practicum.ewm.collector.infrastructure.spool;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.collector.application.config.CollectorProperties;
+import ru.practicum.ewm.stats.grpc.UserActionProto;
+
+/**
+ * Append-only, memory-mapped write-ahead spool for user actions.
+ * <p>
+ * Actions are stored in fixed-size segment files as {@code [int length + 1][protobuf bytes]} records;
+ * the header is offset by one because an action with all fields at their defaults serializes to zero
+ * bytes. A zero header marks the unwritten tail of a segment, and {@code -1} marks a sealed segment.
+ * Appends write straight into the mapped segment under a short lock, so they are O(1) and never
+ * wait for Kafka. A mapped page survives a crash of the JVM, but not of the host.
+ * <p>
+ * A single consumer ({@link SpoolForwarder}) reads records in order with {@link #peek(int)} and
+ * confirms them with {@link #commit()}. The committed read position is kept in a memory-mapped
+ * checkpoint file, so after a restart the spool replays everything that was not committed.
+ * Fully consumed segments are deleted.
+ */
+@Component
+@Slf4j
+public class UserActionSpool implements InitializingBean {
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int UNWRITTEN = 0;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final CollectorProperties.Spool properties;
+    private final int segmentSize;
+
+    private final Counter appendedCounter;
+    private final Counter bypassedCounter;
+
+    // Writer state, guarded by this
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private volatile Position writePosition;
+    // Records from here on were appended by this process and hold an admission slot
+    private Position openedAt;
+
+    // Reader state, confined to the forwarder thread
+    private volatile long readSegment;
+    private int readOffset;
+    private MappedByteBuffer readBuffer;
+    private Position pending;
+    private MappedByteBuffer pendingBuffer;
+    private int pendingAdmitted;
+    private MappedByteBuffer checkpoint;
+
+    public UserActionSpool(CollectorProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties.getSpool();
+        this.segmentSize = (int) this.properties.getSegmentSize().toBytes();
+
+        this.appendedCounter = Counter.builder("collector.spool.appended")
+            .description("User actions appended to the local spool")
+            .register(meterRegistry);
+        this.bypassedCounter = Counter.builder("collector.spool.bypassed")
+            .description("User actions that bypassed the spool because it was full")
+            .register(meterRegistry);
+        Gauge.builder("collector.spool.segments", this, spool -> spool.writePosition == null
+                ? 0 : spool.writePosition.segment() - spool.readSegment + 1)
+            .description("Spool segments holding actions not yet forwarded to Kafka")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Path directory = properties.getDirectory();
+        Files.createDirectories(directory);
+        checkpoint = map(directory.resolve(CHECKPOINT_FILE), Long.BYTES);
+
+        long committed = checkpoint.getLong(0);
+        long committedSegment = committed >>> 32;
+        int committedOffset = (int) committed;
+
+        List<Long> segments = listSegments(directory);
+        for (long segment : segments) {
+            if (segment < committedSegment) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+        segments.removeIf(segment -> segment < committedSegment);
+
+        if (segments.isEmpty()) {
+            readSegment = committedSegment;
+            readOffset = 0;
+            writeSegment = committedSegment;
+        } else {
+            readSegment = segments.getFirst();
+            readOffset = readSegment == committedSegment ? committedOffset : 0;
+            writeSegment = segments.getLast();
+        }
+        readBuffer = mapSegment(readSegment);
+        writeBuffer = mapSegment(writeSegment);
+
+        int tail = recoverTail(writeSegment == readSegment ? readOffset : 0);
+        if (tail < 0) {
+            roll();
+            tail = 0;
+        }
+        writeBuffer.position(tail);
+        writePosition = new Position(writeSegment, tail);
+        openedAt = writePosition;
+
+        log.info("User action spool opened in {}: replaying from segment {} offset {}, appending to segment {} offset {}",
+            directory, readSegment, readOffset, writeSegment, tail);
+    }
+
+    /**
+     * Appends an action to the spool.
+     *
+     * @param action The action to persist.
+     * @return {@code true} if the action is spooled and will be forwarded to Kafka, {@code false}
+     *         if the spool is disabled or full and the caller has to deliver the action itself.
+     */
+    public boolean append(UserActionProto action) {
+        if (!isEnabled()) {
+            return false;
+        }
+        int size = action.getSerializedSize();
+        if (HEADER_SIZE + size + HEADER_SIZE > segmentSize) {
+            throw new IllegalArgumentException("User action of " + size + " bytes does not fit into a spool segment.");
+        }
+
+        synchronized (this) {
+            int offset = writeBuffer.position();
+            // Always leave room for the end-of-segment marker
+            if (offset + HEADER_SIZE + size > segmentSize - HEADER_SIZE) {
+                if (writeSegment - readSegment + 1 >= properties.getMaxSegments()) {
+                    bypassedCounter.increment();
+                    return false;
+                }
+                writeBuffer.putInt(offset, END_OF_SEGMENT);
+                roll();
+                offset = 0;
+            }
+            try {
+                CodedOutputStream output = CodedOutputStream.newInstance(writeBuffer.slice(offset + HEADER_SIZE, size));
+                action.writeTo(output);
+                output.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write user action to spool", e);
+            }
+            // The header goes in last, so a record is never visible before its payload
+            writeBuffer.putInt(offset, size + 1);
+            writeBuffer.position(offset + HEADER_SIZE + size);
+            writePosition = new Position(writeSegment, offset + HEADER_SIZE + size);
+        }
+        appendedCounter.increment();
+        return true;
+    }
+
+    /**
+     * Reads up to {@code maxRecords} actions following the committed read position, without
+     * committing them. Calling it again before {@link #commit()} returns the same actions.
+     *
+     * @param maxRecords The maximum number of actions to return.
+     * @return The next spooled actions in append order, or an empty list if none are pending.
+     */
+    public List<UserActionProto> peek(int maxRecords) {
+        Position limit = writePosition;
+        List<UserActionProto> records = new ArrayList<>();
+
+        long segment = readSegment;
+        int offset = readOffset;
+        MappedByteBuffer buffer = readBuffer;
+        int admitted = 0;
+
+        while (records.size() < maxRecords) {
+            if (segment == limit.segment() && offset >= limit.offset()) {
+                break;
+            }
+            int header = buffer.getInt(offset);
+            if (header == END_OF_SEGMENT || header == UNWRITTEN) {
+                if (segment >= limit.segment()) {
+                    break;
+                }
+                // Only a sealed segment can end before the write position
+                segment++;
+                offset = 0;
+                buffer = mapSegment(segment);
+                continue;
+            }
+            int length = header - 1;
+            if (segment > openedAt.segment() || segment == openedAt.segment() && offset >= openedAt.offset()) {
+                admitted++;
+            }
+            try {
+                records.add(UserActionProto.parseFrom(buffer.slice(offset + HEADER_SIZE, length)));
+            } catch (InvalidProtocolBufferException e) {
+                log.error("Skipping corrupted spool record in segment {} at offset {}: {}", segment, offset, e.getMessage());
+            }
+            offset += HEADER_SIZE + length;
+        }
+
+        pending = new Position(segment, offset);
+        pendingBuffer = buffer;
+        pendingAdmitted = admitted;
+        return records;
+    }
+
+    /**
+     * Marks everything returned by the last {@link #peek(int)} as forwarded.
+     *
+     * @return The number of committed actions that were appended by this process, as opposed to
+     *         replayed from a previous run; each of them holds an admission slot.
+     */
+    public int commit() {
+        if (pending == null) {
+            return 0;
+        }
+        int admitted = pendingAdmitted;
+        long previousSegment = checkpoint.getLong(0) >>> 32;
+        readSegment = pending.segment();
+        readOffset = pending.offset();
+        readBuffer = pendingBuffer;
+        checkpoint.putLong(0, (pending.segment() << 32) | pending.offset());
+        checkpoint.force();
+        pending = null;
+        pendingBuffer = null;
+        pendingAdmitted = 0;
+
+        for (long segment = previousSegment; segment < readSegment; segment++) {
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException e) {
+                log.warn("Failed to delete forwarded spool segment {}: {}", segment, e.getMessage());
+            }
+        }
+        return admitted;
+    }
+
+    private int recoverTail(int from) {
+        int offset = from;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int header = writeBuffer.getInt(offset);
+            if (header == UNWRITTEN) {
+                return offset;
+            }
+            if (header == END_OF_SEGMENT) {
+                return -1;
+            }
+            int length = header - 1;
+            if (length < 0 || offset + HEADER_SIZE + length > segmentSize - HEADER_SIZE) {
+                // A torn record: seal the segment right here
+                log.warn("Spool segment {} has a corrupted record at offset {}, sealing it.", writeSegment, offset);
+                writeBuffer.putInt(offset, END_OF_SEGMENT);
+                return -1;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return -1;
+    }
+
+    private void roll() {
+        writeSegment++;
+        writeBuffer = mapSegment(writeSegment);
+        log.debug("Spool rolled over to segment {}", writeSegment);
+    }
+
+    private MappedByteBuffer mapSegment(long segment) {
+        try {
+            return map(segmentPath(segment), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map spool segment " + segment, e);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return properties.getDirectory().resolve("%020d%s".formatted(segment, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        }
+    }
+
+    private record Position(long segment, int offset) {
+    }
+}
@@ -1,12 +1,23 @@
 package ru.practicum.ewm.collector.presentation;
 
 import com.google.protobuf.Empty;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import ru.practicum.ewm.collector.application.UserActionAdmission;
+import ru.practicum.ewm.collector.application.UserActionDeduplicator;
+import ru.practicum.ewm.collector.application.config.CollectorProperties;
 import ru.practicum.ewm.collector.infrastructure.kafka.UserActionProducer;
 import ru.practicum.ewm.collector.infrastructure.mapper.UserActionMapper;
+import ru.practicum.ewm.collector.infrastructure.spool.SpoolForwarder;
+import ru.practicum.ewm.collector.infrastructure.spool.UserActionSpool;
+import ru.practicum.ewm.stats.grpc.UserActionBatchProto;
 import ru.practicum.ewm.stats.grpc.UserActionControllerGrpc;
 import ru.practicum.ewm.stats.grpc.UserActionProto;
 
@@ -15,16 +26,153 @@ import ru.practicum.ewm.stats.grpc.UserActionProto;
 @RequiredArgsConstructor
 public class UserActionControllerImpl extends UserActionControllerGrpc.UserActionControllerImplBase {
 
+    // Shed responses reuse one pre-built exception, so rejecting costs no allocation or stack walk
+    private static final StatusRuntimeException SHED = Status.RESOURCE_EXHAUSTED
+        .withDescription("Collector is overloaded, user action was shed.")
+        .asRuntimeException();
+
     private final UserActionProducer producer;
     private final UserActionMapper mapper;
+    private final UserActionAdmission admission;
+    private final UserActionDeduplicator deduplicator;
+    private final UserActionSpool spool;
+    private final CollectorProperties properties;
 
     @Override
     public void collectUserAction(UserActionProto request, StreamObserver<Empty> responseObserver) {
-        log.info("Received user action via gRPC: {}", request);
+        switch (dispatch(request)) {
+            case SUPPRESSED -> log.debug("Suppressed redundant user action: {}", request);
+            case SPOOLED -> log.info("Spooled user action received via gRPC: {}", request);
+            case ADMITTED -> {
+                log.info("Received user action via gRPC: {}", request);
+                send(List.of(request));
+            }
+            case SHED -> {
+                responseObserver.onError(SHED);
+                return;
+            }
+        }
+
+        responseObserver.onNext(Empty.getDefaultInstance());
+        responseObserver.onCompleted();
+    }
 
-        producer.sendUserAction(mapper.toAvro(request));
+    @Override
+    public void collectUserActionsBatch(UserActionBatchProto request, StreamObserver<Empty> responseObserver) {
+        log.info("Received batch of {} user actions via gRPC", request.getActionsCount());
+
+        List<UserActionProto> admitted = new ArrayList<>(request.getActionsCount());
+        for (UserActionProto action : request.getActionsList()) {
+            if (dispatch(action) == Outcome.ADMITTED) {
+                admitted.add(action);
+            }
+        }
+        send(admitted);
 
         responseObserver.onNext(Empty.getDefaultInstance());
         responseObserver.onCompleted();
     }
-}
\ No newline at end of file
+
+    @Override
+    public StreamObserver<UserActionProto> collectUserActions(StreamObserver<Empty> responseObserver) {
+        int maxBatchSize = properties.getBatch().getMaxSize();
+
+        return new StreamObserver<>() {
+            private final List<UserActionProto> buffer = new ArrayList<>(maxBatchSize);
+            private long received;
+
+            @Override
+            public void onNext(UserActionProto action) {
+                received++;
+                if (dispatch(action) != Outcome.ADMITTED) {
+                    return;
+                }
+                buffer.add(action);
+                if (buffer.size() >= maxBatchSize) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // Everything received before the client went away is still a valid action
+                log.warn("User action stream terminated by client after {} actions: {}", received, t.getMessage());
+                flush();
+            }
+
+            @Override
+            public void onCompleted() {
+                flush();
+                log.info("User action stream completed, {} actions received.", received);
+                responseObserver.onNext(Empty.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+
+            private void flush() {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                send(buffer);
+                buffer.clear();
+            }
+        };
+    }
+
+    /**
+     * Runs an action through deduplication, admission control and the spool.
+     * Only {@link Outcome#ADMITTED} actions still have to be sent to Kafka by the caller.
+     * A spooled action keeps its in-flight slot until the {@link SpoolForwarder} has delivered it.
+     */
+    private Outcome dispatch(UserActionProto action) {
+        if (deduplicator.isRedundant(action)) {
+            return Outcome.SUPPRESSED;
+        }
+        if (!admission.tryAdmit(action.getActionType())) {
+            return Outcome.SHED;
+        }
+        boolean spooled;
+        try {
+            spooled = spool.append(action);
+        } catch (RuntimeException e) {
+            admission.release(1);
+            throw e;
+        }
+        if (!spooled) {
+            return Outcome.ADMITTED;
+        }
+        // The spool delivers at least once, so the pair counts as accepted right away
+        deduplicator.remember(action);
+        return Outcome.SPOOLED;
+    }
+
+    private void send(List<UserActionProto> admitted) {
+        if (admitted.isEmpty()) {
+            return;
+        }
+        int permits = admitted.size();
+        CompletableFuture<?> sent;
+        try {
+            sent = permits == 1
+                ? producer.sendUserAction(mapper.toAvro(admitted.getFirst()))
+                : producer.sendUserActions(mapper.toAvro(admitted));
+        } catch (RuntimeException e) {
+            admission.release(permits);
+            throw e;
+        }
+        // Remembered only once Kafka has them, so a failed send does not suppress the client's retry
+        List<UserActionProto> actions = List.copyOf(admitted);
+        sent.whenComplete((result, ex) -> {
+            admission.release(permits);
+            if (ex == null) {
+                actions.forEach(deduplicator::remember);
+            }
+        });
+    }
+
+    private enum Outcome {
+        SUPPRESSED,
+        SPOOLED,
+        ADMITTED,
+        SHED
+    }
+}
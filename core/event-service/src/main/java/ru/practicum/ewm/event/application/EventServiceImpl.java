@@ -7,6 +7,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -369,8 +370,16 @@ public class EventServiceImpl implements EventService {
             .map(T::getId)
             .collect(Collectors.toSet());
 
+        // The analyzer call runs while the request service is queried
+        CompletableFuture<Map<Long, Double>> ratingsFuture =
+            analyzerClient.getInteractionsCountAsync(eventIds, AnalyzerClient.DEFAULT_DEADLINE);
         Map<Long, Long> confirmedCountsMap = requestClient.getConfirmedRequestCounts(eventIds);
-        Map<Long, Double> ratingsMap = analyzerClient.getInteractionsCount(eventIds);
+        Map<Long, Double> ratingsMap = ratingsFuture
+            .exceptionally(e -> {
+                log.error("Failed to get ratings for {} events from analyzer", eventIds.size(), e);
+                return Map.of();
+            })
+            .join();
 
         dtos.forEach(dto -> {
             dto.setConfirmedRequests(confirmedCountsMap.getOrDefault(dto.getId(), 0L));
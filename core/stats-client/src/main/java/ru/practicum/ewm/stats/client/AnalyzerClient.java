@@ -1,21 +1,30 @@
 package ru.practicum.ewm.stats.client;
 
 import io.grpc.stub.StreamObserver;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.client.inject.GrpcClient;
 import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.client.cache.EventRatingCache;
+import ru.practicum.ewm.stats.client.resilience.CircuitBreaker;
+import ru.practicum.ewm.stats.client.resilience.LastKnownGoodStore;
 import ru.practicum.ewm.stats.grpc.InteractionsCountRequestProto;
 import ru.practicum.ewm.stats.grpc.RecommendationsControllerGrpc;
+import ru.practicum.ewm.stats.grpc.RecommendationsControllerGrpc.RecommendationsControllerStub;
 import ru.practicum.ewm.stats.grpc.RecommendedEventProto;
+import ru.practicum.ewm.stats.grpc.RecommendedEventsProto;
 import ru.practicum.ewm.stats.grpc.SimilarEventsRequestProto;
 import ru.practicum.ewm.stats.grpc.UserPredictionsRequestProto;
 
@@ -23,65 +32,235 @@ import ru.practicum.ewm.stats.grpc.UserPredictionsRequestProto;
 @Slf4j
 public class AnalyzerClient {
 
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(5);
+
     @GrpcClient("analyzer")
     private RecommendationsControllerGrpc.RecommendationsControllerStub asyncStub;
 
+    private final EventRatingCache ratingCache;
+    private final boolean packedResponses;
+    private final CircuitBreaker circuitBreaker;
+    private final LastKnownGoodStore lastKnownGood;
+    private final int maxRevalidations;
+
+    // Requests answered from the last known good results while the breaker was open
+    private final Map<Object, Runnable> revalidations = new ConcurrentHashMap<>();
+
+    public AnalyzerClient() {
+        this(null, false, null, null, 0);
+    }
+
+    /**
+     * @param ratingCache The near-cache for {@link #getInteractionsCountAsync}, or {@code null} to always ask the analyzer.
+     * @param packedResponses Whether to call the unary RPC variants returning packed arrays.
+     * @param circuitBreaker The breaker guarding the analyzer calls, or {@code null} to call it unconditionally.
+     * @param lastKnownGood The results served when a call is rejected by the breaker or fails;
+     *        required with a circuit breaker.
+     * @param maxRevalidations The maximum number of requests refreshed in the background once the breaker closes.
+     */
+    public AnalyzerClient(EventRatingCache ratingCache, boolean packedResponses, CircuitBreaker circuitBreaker,
+        LastKnownGoodStore lastKnownGood, int maxRevalidations) {
+        this.ratingCache = ratingCache;
+        this.packedResponses = packedResponses;
+        this.circuitBreaker = circuitBreaker;
+        this.lastKnownGood = lastKnownGood;
+        this.maxRevalidations = maxRevalidations;
+    }
+
     public Map<Long, Double> getInteractionsCount(Collection<Long> eventIds) {
+        return await(getInteractionsCountAsync(eventIds, DEFAULT_DEADLINE),
+            "Failed to get interaction counts from analyzer");
+    }
+
+    public Map<Long, Double> getRecommendationsForUser(Long userId, int maxResults) {
+        return await(getRecommendationsForUserAsync(userId, maxResults, DEFAULT_DEADLINE),
+            "Failed to get recommendations from analyzer");
+    }
+
+    public Map<Long, Double> getSimilarEvents(Long eventId, Long userId, int maxResults) {
+        return await(getSimilarEventsAsync(eventId, userId, maxResults, DEFAULT_DEADLINE),
+            "Failed to get similar events from analyzer");
+    }
+
+    /**
+     * Requests the ratings (sums of maximum interaction weights) of the given events without blocking.
+     *
+     * @param eventIds The events to rate.
+     * @param deadline How long the analyzer may take before the call fails with {@code DEADLINE_EXCEEDED}.
+     * @return A future completed with event IDs mapped to their ratings; events without
+     *         interactions are absent.
+     */
+    public CompletableFuture<Map<Long, Double>> getInteractionsCountAsync(Collection<Long> eventIds,
+        Duration deadline) {
+        if (ratingCache == null) {
+            return guardedInteractionsCount(eventIds, deadline).thenApply(Answer::result);
+        }
+        // Fallback answers are served but not cached, so they do not outlive the outage
+        return ratingCache.getAll(eventIds, missing -> guardedInteractionsCount(missing, deadline)
+                .thenApply(answer -> new EventRatingCache.Loaded(answer.result(), answer.fromAnalyzer())))
+            .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private CompletableFuture<Answer> guardedInteractionsCount(Collection<Long> eventIds, Duration deadline) {
+        List<Long> key = List.copyOf(eventIds);
+        return guarded("GetInteractionsCount", key,
+            timeout -> fetchInteractionsCount(key, timeout),
+            () -> lastKnownGood.getRatings(key),
+            ratings -> lastKnownGood.putRatings(key, ratings),
+            deadline);
+    }
+
+    private CompletableFuture<Map<Long, Double>> fetchInteractionsCount(Collection<Long> eventIds, Duration deadline) {
         log.debug("Requesting interaction counts for {} events", eventIds.size());
         InteractionsCountRequestProto request = InteractionsCountRequestProto.newBuilder()
             .addAllEventIds(eventIds)
             .build();
 
-        CompletableFuture<List<RecommendedEventProto>> future = new CompletableFuture<>();
-        List<RecommendedEventProto> results = new ArrayList<>();
+        if (packedResponses) {
+            return callPacked("GetInteractionsCountPacked", deadline,
+                (stub, observer) -> stub.getInteractionsCountPacked(request, observer));
+        }
+        return call("GetInteractionsCount", deadline, (stub, observer) -> stub.getInteractionsCount(request, observer));
+    }
+
+    /**
+     * Requests event predictions for a user without blocking.
+     *
+     * @param userId The user to predict events for.
+     * @param maxResults The maximum number of predictions.
+     * @param deadline How long the analyzer may take before the call fails with {@code DEADLINE_EXCEEDED}.
+     * @return A future completed with event IDs mapped to their predicted scores.
+     */
+    public CompletableFuture<Map<Long, Double>> getRecommendationsForUserAsync(Long userId, int maxResults,
+        Duration deadline) {
+        UserPredictionsKey key = new UserPredictionsKey(userId, maxResults);
+        return guarded("GetRecommendationsForUser", key,
+            timeout -> fetchRecommendationsForUser(userId, maxResults, timeout),
+            () -> lastKnownGood.getResult(key),
+            result -> lastKnownGood.putResult(key, result),
+            deadline).thenApply(Answer::result);
+    }
+
+    private CompletableFuture<Map<Long, Double>> fetchRecommendationsForUser(Long userId, int maxResults,
+        Duration deadline) {
+        log.debug("Requesting recommendations for user {}", userId);
+        UserPredictionsRequestProto request = UserPredictionsRequestProto.newBuilder()
+            .setUserId(userId)
+            .setMaxResults(maxResults)
+            .build();
+
+        if (packedResponses) {
+            return callPacked("GetRecommendationsForUserPacked", deadline,
+                (stub, observer) -> stub.getRecommendationsForUserPacked(request, observer));
+        }
+        return call("GetRecommendationsForUser", deadline,
+            (stub, observer) -> stub.getRecommendationsForUser(request, observer));
+    }
+
+    /**
+     * Requests the events most similar to a given one, excluding those the user interacted with,
+     * without blocking.
+     *
+     * @param eventId The event to find similar events for.
+     * @param userId The user whose interacted events are excluded.
+     * @param maxResults The maximum number of similar events.
+     * @param deadline How long the analyzer may take before the call fails with {@code DEADLINE_EXCEEDED}.
+     * @return A future completed with event IDs mapped to their similarity scores.
+     */
+    public CompletableFuture<Map<Long, Double>> getSimilarEventsAsync(Long eventId, Long userId, int maxResults,
+        Duration deadline) {
+        SimilarEventsKey key = new SimilarEventsKey(eventId, userId, maxResults);
+        return guarded("GetSimilarEvents", key,
+            timeout -> fetchSimilarEvents(eventId, userId, maxResults, timeout),
+            () -> lastKnownGood.getResult(key),
+            result -> lastKnownGood.putResult(key, result),
+            deadline).thenApply(Answer::result);
+    }
 
-        asyncStub.getInteractionsCount(request, new StreamObserver<>() {
-            @Override
-            public void onNext(RecommendedEventProto value) {
-                results.add(value);
-            }
+    private CompletableFuture<Map<Long, Double>> fetchSimilarEvents(Long eventId, Long userId, int maxResults,
+        Duration deadline) {
+        log.debug("Requesting similar events for event {}", eventId);
+        SimilarEventsRequestProto request = SimilarEventsRequestProto.newBuilder()
+            .setEventId(eventId).setUserId(userId).setMaxResults(maxResults).build();
 
-            @Override
-            public void onError(Throwable t) {
-                log.error("gRPC stream for GetInteractionsCount failed", t);
-                future.completeExceptionally(t);
+        if (packedResponses) {
+            return callPacked("GetSimilarEventsPacked", deadline,
+                (stub, observer) -> stub.getSimilarEventsPacked(request, observer));
+        }
+        return call("GetSimilarEvents", deadline, (stub, observer) -> stub.getSimilarEvents(request, observer));
+    }
+
+    /**
+     * Runs an analyzer call behind the circuit breaker. While the breaker is open the last known good
+     * result is returned at once and the request is queued for revalidation; a failed call falls back
+     * to the last known good result too. Without any known result, a rejected call yields an empty map
+     * and a failed call fails. The answer tells whether it came from the analyzer.
+     */
+    private CompletableFuture<Answer> guarded(String rpcName, Object key,
+        Function<Duration, CompletableFuture<Map<Long, Double>>> call,
+        Supplier<Map<Long, Double>> knownResult,
+        Consumer<Map<Long, Double>> remember,
+        Duration deadline) {
+        if (circuitBreaker == null) {
+            return call.apply(deadline).thenApply(Answer::fromAnalyzer);
+        }
+
+        if (!circuitBreaker.tryAcquire()) {
+            if (revalidations.size() < maxRevalidations) {
+                revalidations.putIfAbsent(key, () -> call.apply(DEFAULT_DEADLINE).thenAccept(remember));
             }
+            Map<Long, Double> known = knownResult.get();
+            log.debug("Analyzer circuit breaker is open, answering {} from {} results", rpcName,
+                known == null ? "no" : "last known good");
+            return CompletableFuture.completedFuture(new Answer(known == null ? Map.of() : known, false));
+        }
 
-            @Override
-            public void onCompleted() {
-                future.complete(results);
+        return call.apply(deadline).handle((result, ex) -> {
+            if (ex == null) {
+                remember.accept(result);
+                if (circuitBreaker.onSuccess()) {
+                    revalidate();
+                }
+                return CompletableFuture.completedFuture(Answer.fromAnalyzer(result));
             }
-        });
+            circuitBreaker.onFailure();
+            Map<Long, Double> known = knownResult.get();
+            if (known == null) {
+                return CompletableFuture.<Answer>failedFuture(ex);
+            }
+            log.warn("{} failed, answering from last known good results: {}", rpcName, ex.getMessage());
+            return CompletableFuture.completedFuture(new Answer(known, false));
+        }).thenCompose(Function.identity());
+    }
 
-        try {
-            List<RecommendedEventProto> finalResults = future.get(5, TimeUnit.SECONDS);
-            return finalResults.stream()
-                .collect(Collectors.toMap(RecommendedEventProto::getEventId, RecommendedEventProto::getScore));
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            log.error("Failed to get interaction counts from analyzer", e);
-            return Map.of();
+    private void revalidate() {
+        List<Object> keys = List.copyOf(revalidations.keySet());
+        log.info("Analyzer recovered, revalidating {} results served stale", keys.size());
+        for (Object key : keys) {
+            Runnable revalidation = revalidations.remove(key);
+            if (revalidation != null) {
+                revalidation.run();
+            }
         }
     }
 
-    public Map<Long, Double> getRecommendationsForUser(Long userId, int maxResults) {
-        log.debug("Requesting recommendations for user {}", userId);
-        UserPredictionsRequestProto request = UserPredictionsRequestProto.newBuilder()
-            .setUserId(userId)
-            .setMaxResults(maxResults)
-            .build();
+    private CompletableFuture<Map<Long, Double>> call(String rpcName, Duration deadline,
+        BiConsumer<RecommendationsControllerStub, StreamObserver<RecommendedEventProto>> invocation) {
+        CompletableFuture<Map<Long, Double>> future = new CompletableFuture<>();
+        RecommendationsControllerStub stub = asyncStub.withDeadlineAfter(deadline.toMillis(), TimeUnit.MILLISECONDS);
 
-        CompletableFuture<List<RecommendedEventProto>> future = new CompletableFuture<>();
-        List<RecommendedEventProto> results = new ArrayList<>();
+        invocation.accept(stub, new StreamObserver<>() {
+            // gRPC delivers the callbacks of one call sequentially, and completing the future publishes the map
+            private final Map<Long, Double> results = new HashMap<>();
 
-        asyncStub.getRecommendationsForUser(request, new StreamObserver<RecommendedEventProto>() {
             @Override
             public void onNext(RecommendedEventProto value) {
-                results.add(value);
+                results.put(value.getEventId(), value.getScore());
             }
 
             @Override
             public void onError(Throwable t) {
-                log.error("gRPC stream for GetRecommendationsForUser failed", t);
+                log.error("gRPC stream for {} failed", rpcName, t);
                 future.completeExceptionally(t);
             }
 
@@ -90,50 +269,65 @@ public class AnalyzerClient {
                 future.complete(results);
             }
         });
-
-        try {
-            List<RecommendedEventProto> finalResults = future.get(5, TimeUnit.SECONDS);
-            return finalResults.stream()
-                .collect(Collectors.toMap(RecommendedEventProto::getEventId, RecommendedEventProto::getScore));
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            log.error("Failed to get recommendations from analyzer", e);
-            return Map.of();
-        }
+        return future;
     }
 
-    public Map<Long, Double> getSimilarEvents(Long eventId, Long userId, int maxResults) {
-        log.debug("Requesting similar events for event {}", eventId);
-        SimilarEventsRequestProto request = SimilarEventsRequestProto.newBuilder()
-            .setEventId(eventId).setUserId(userId).setMaxResults(maxResults).build();
-
-        CompletableFuture<List<RecommendedEventProto>> future = new CompletableFuture<>();
-        List<RecommendedEventProto> results = new ArrayList<>();
+    private CompletableFuture<Map<Long, Double>> callPacked(String rpcName, Duration deadline,
+        BiConsumer<RecommendationsControllerStub, StreamObserver<RecommendedEventsProto>> invocation) {
+        CompletableFuture<Map<Long, Double>> future = new CompletableFuture<>();
+        RecommendationsControllerStub stub = asyncStub.withDeadlineAfter(deadline.toMillis(), TimeUnit.MILLISECONDS);
 
-        asyncStub.getSimilarEvents(request, new StreamObserver<RecommendedEventProto>() {
+        invocation.accept(stub, new StreamObserver<>() {
             @Override
-            public void onNext(RecommendedEventProto value) {
-                results.add(value);
+            public void onNext(RecommendedEventsProto value) {
+                int count = value.getEventIdsCount();
+                Map<Long, Double> results = HashMap.newHashMap(count);
+                for (int i = 0; i < count; i++) {
+                    results.put(value.getEventIds(i), value.getScores(i));
+                }
+                future.complete(results);
             }
 
             @Override
             public void onError(Throwable t) {
-                log.error("gRPC stream for GetSimilarEvents failed", t);
+                log.error("gRPC call {} failed", rpcName, t);
                 future.completeExceptionally(t);
             }
 
             @Override
             public void onCompleted() {
-                future.complete(results);
+                // The single response has already completed the future
             }
         });
+        return future;
+    }
 
+    private Map<Long, Double> await(CompletableFuture<Map<Long, Double>> future, String errorMessage) {
         try {
-            List<RecommendedEventProto> finalResults = future.get(5, TimeUnit.SECONDS);
-            return finalResults.stream().collect(Collectors.toMap(RecommendedEventProto::getEventId,
-                RecommendedEventProto::getScore));
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            log.error("Failed to get similar events from analyzer", e);
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(errorMessage, e);
+            return Map.of();
+        } catch (ExecutionException e) {
+            log.error(errorMessage, e.getCause());
             return Map.of();
         }
     }
-}
\ No newline at end of file
+
+    private record UserPredictionsKey(long userId, int maxResults) {
+    }
+
+    private record SimilarEventsKey(long eventId, long userId, int maxResults) {
+    }
+
+    /**
+     * @param fromAnalyzer Whether the analyzer produced the result, rather than a fallback.
+     */
+    private record Answer(Map<Long, Double> result, boolean fromAnalyzer) {
+
+        private static Answer fromAnalyzer(Map<Long, Double> result) {
+            return new Answer(result, true);
+        }
+    }
+}
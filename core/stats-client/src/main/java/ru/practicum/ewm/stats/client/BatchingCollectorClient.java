@@ -0,0 +1,243 @@
+package ru.practicum.ewm.stats.client;
+
+import com.google.protobuf.Empty;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import ru.practicum.ewm.stats.client.config.CollectorClientProperties;
+import ru.practicum.ewm.stats.client.config.CollectorClientProperties.OverflowPolicy;
+import ru.practicum.ewm.stats.grpc.ActionTypeProto;
+import ru.practicum.ewm.stats.grpc.UserActionProto;
+
+/**
+ * A {@link CollectorClient} that decouples the caller from the gRPC round-trip.
+ * <p>
+ * Actions are put into a bounded, lock-free queue and returned to the caller immediately.
+ * A single background sender drains the queue whenever it holds {@code maxBatchSize} actions
+ * or every {@code flushInterval}, and ships each batch over the client-streaming
+ * {@code CollectUserActions} RPC.
+ * <p>
+ * Views and the rest of the actions are kept in separate lanes sharing one capacity, so that the
+ * {@link OverflowPolicy#DROP_VIEWS_FIRST} policy can evict a view in O(1) when the queue is full.
+ */
+@Slf4j
+public class BatchingCollectorClient extends CollectorClient implements InitializingBean, DisposableBean {
+
+    private final CollectorClientProperties.Batching properties;
+
+    private final Queue<UserActionProto> priorityLane = new ConcurrentLinkedQueue<>();
+    private final Queue<UserActionProto> viewLane = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    // Streams that have been half-closed but not yet answered by the collector
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "collector-client-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<ActionTypeProto, Counter> droppedCounters = new EnumMap<>(ActionTypeProto.class);
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+
+    public BatchingCollectorClient(CollectorClientProperties.Batching properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+
+        Gauge.builder("stats.collector.client.queue.depth", queued, AtomicInteger::get)
+            .description("Number of user actions waiting to be sent to the collector")
+            .register(meterRegistry);
+        for (ActionTypeProto actionType : ActionTypeProto.values()) {
+            if (actionType != ActionTypeProto.UNRECOGNIZED) {
+                droppedCounters.put(actionType, Counter.builder("stats.collector.client.dropped")
+                    .description("User actions dropped because the send queue was full")
+                    .tag("action", actionType.name())
+                    .register(meterRegistry));
+            }
+        }
+        this.sentCounter = Counter.builder("stats.collector.client.sent")
+            .description("User actions acknowledged by the collector")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder("stats.collector.client.failed")
+            .description("User actions lost because the collector stream failed")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        long intervalMillis = properties.getFlushInterval().toMillis();
+        sender.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Batching collector client started: capacity={}, maxBatchSize={}, flushInterval={}, overflowPolicy={}",
+            properties.getQueueCapacity(), properties.getMaxBatchSize(), properties.getFlushInterval(),
+            properties.getOverflowPolicy());
+    }
+
+    @Override
+    public void collectUserAction(UserActionProto action) {
+        if (!reserveSlot(action)) {
+            recordDrop(action);
+            return;
+        }
+        laneOf(action).offer(action);
+
+        if (queued.get() >= properties.getMaxBatchSize() && flushPending.compareAndSet(false, true)) {
+            sender.execute(this::flush);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        sender.shutdown();
+        if (!sender.awaitTermination(properties.getFlushInterval().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+            sender.shutdownNow();
+        }
+        // Whatever is still queued goes out from the shutdown thread
+        flush();
+        awaitInFlight();
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        List<CompletableFuture<Void>> pending = List.copyOf(inFlight);
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                .get(properties.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Collector did not acknowledge {} batches within {}, their user actions may be lost",
+                inFlight.size(), properties.getShutdownTimeout());
+        } catch (ExecutionException e) {
+            // Never thrown: the futures are only ever completed normally
+            log.error("Failed to await the final batches: {}", e.getMessage());
+        }
+    }
+
+    private boolean reserveSlot(UserActionProto action) {
+        while (true) {
+            int current = queued.get();
+            if (current < properties.getQueueCapacity()) {
+                if (queued.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+
+            if (properties.getOverflowPolicy() == OverflowPolicy.DROP_VIEWS_FIRST
+                && action.getActionType() != ActionTypeProto.ACTION_VIEW) {
+                UserActionProto evicted = viewLane.poll();
+                if (evicted != null) {
+                    // The evicted view's slot is handed over to the incoming action
+                    recordDrop(evicted);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private Queue<UserActionProto> laneOf(UserActionProto action) {
+        return action.getActionType() == ActionTypeProto.ACTION_VIEW ? viewLane : priorityLane;
+    }
+
+    private void recordDrop(UserActionProto action) {
+        Counter counter = droppedCounters.get(action.getActionType());
+        if (counter != null) {
+            counter.increment();
+        }
+        log.debug("Collector client queue is full, dropping {} of user {} on event {}",
+            action.getActionType(), action.getUserId(), action.getEventId());
+    }
+
+    private void flush() {
+        try {
+            List<UserActionProto> batch;
+            while (!(batch = drain()).isEmpty()) {
+                send(batch);
+                if (batch.size() < properties.getMaxBatchSize()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to flush user actions to collector: {}", e.getMessage());
+        } finally {
+            flushPending.set(false);
+        }
+    }
+
+    private List<UserActionProto> drain() {
+        int maxBatchSize = properties.getMaxBatchSize();
+        List<UserActionProto> batch = new ArrayList<>(Math.min(queued.get(), maxBatchSize));
+        drainLane(priorityLane, batch, maxBatchSize);
+        drainLane(viewLane, batch, maxBatchSize);
+        return batch;
+    }
+
+    private void drainLane(Queue<UserActionProto> lane, List<UserActionProto> batch, int maxBatchSize) {
+        UserActionProto action;
+        while (batch.size() < maxBatchSize && (action = lane.poll()) != null) {
+            queued.decrementAndGet();
+            batch.add(action);
+        }
+    }
+
+    private void send(List<UserActionProto> batch) {
+        log.debug("Streaming batch of {} user actions to collector", batch.size());
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        inFlight.add(done);
+        done.whenComplete((ignored, error) -> inFlight.remove(done));
+
+        StreamObserver<UserActionProto> requestObserver = asyncStub.collectUserActions(new StreamObserver<>() {
+            @Override
+            public void onNext(Empty value) {
+                log.debug("Collector acknowledged a batch of {} user actions.", batch.size());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                failedCounter.increment(batch.size());
+                log.error("gRPC stream to collector failed, {} user actions lost: {}", batch.size(), t.getMessage());
+                done.complete(null);
+            }
+
+            @Override
+            public void onCompleted() {
+                sentCounter.increment(batch.size());
+                log.debug("gRPC stream to collector completed.");
+                done.complete(null);
+            }
+        });
+
+        try {
+            for (UserActionProto action : batch) {
+                requestObserver.onNext(action);
+            }
+            requestObserver.onCompleted();
+        } catch (RuntimeException e) {
+            requestObserver.onError(e);
+            throw e;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.practicum.ewm.stats.client;
 
 import com.google.protobuf.Empty;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.client.inject.GrpcClient;
@@ -13,7 +14,7 @@ import ru.practicum.ewm.stats.grpc.UserActionProto;
 public class CollectorClient {
 
     @GrpcClient("collector")
-    private UserActionControllerGrpc.UserActionControllerStub asyncStub;
+    protected UserActionControllerGrpc.UserActionControllerStub asyncStub;
 
     public void collectUserAction(UserActionProto action) {
         log.debug("Sending async gRPC call to collector: {}", action.getActionType());
@@ -26,6 +27,10 @@ public class CollectorClient {
 
             @Override
             public void onError(Throwable t) {
+                if (Status.fromThrowable(t).getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+                    log.debug("Collector is overloaded and shed the user action.");
+                    return;
+                }
                 log.error("gRPC call to collector failed: {}", t.getMessage());
             }
 
@@ -3,6 +3,12 @@ package ru.practicum.ewm.stats.client.aop;
 import com.google.protobuf.Timestamp;
 import java.lang.reflect.Method;
 import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
@@ -13,6 +19,8 @@ import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -26,9 +34,15 @@ import ru.practicum.ewm.stats.grpc.UserActionProto;
 @Slf4j
 public class UserActionAspect {
 
+    private static final Pattern PARAMETER_REFERENCE = Pattern.compile("#([A-Za-z_$][A-Za-z0-9_$]*)");
+
     private final CollectorClient collectorClient;
-    private final ExpressionParser expressionParser = new SpelExpressionParser();
     private final ParameterNameDiscoverer parameterNameDiscoverer;
+    private final Executor executor;
+
+    private final ExpressionParser expressionParser = new SpelExpressionParser(
+        new SpelParserConfiguration(SpelCompilerMode.MIXED, UserActionAspect.class.getClassLoader()));
+    private final Map<Method, EventIdExtractor> extractors = new ConcurrentHashMap<>();
 
     @AfterReturning(pointcut = "@annotation(logUserAction)", argNames = "joinPoint,logUserAction")
     public void logAction(JoinPoint joinPoint, LogUserAction logUserAction) {
@@ -45,21 +59,33 @@ public class UserActionAspect {
         }
         long userId = Long.parseLong(userIdStr);
 
-        Long eventId = evaluateSpelExpression(joinPoint, logUserAction.eventId());
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        EventIdExtractor extractor = extractors.computeIfAbsent(method,
+            m -> createExtractor(m, logUserAction.eventId()));
+        Long eventId = extractor.extract(joinPoint.getArgs());
         if (eventId == null) {
             log.error("Could not evaluate SpEL expression '{}' to find eventId.", logUserAction.eventId());
             return;
         }
 
-        ActionTypeProto protoType = mapToActionTypeProto(logUserAction.value());
-
+        // Only what depends on the request is captured here, the rest runs on the executor
+        ActionType actionType = logUserAction.value();
         Instant now = Instant.now();
+        try {
+            executor.execute(() -> send(userId, eventId, actionType, now));
+        } catch (RejectedExecutionException e) {
+            log.warn("Dropping {} of user {} on event {}: user action executor is saturated.",
+                actionType, userId, eventId);
+        }
+    }
+
+    private void send(long userId, long eventId, ActionType actionType, Instant now) {
         Timestamp timestamp = Timestamp.newBuilder().setSeconds(now.getEpochSecond()).setNanos(now.getNano()).build();
 
         UserActionProto userAction = UserActionProto.newBuilder()
             .setUserId(userId)
             .setEventId(eventId)
-            .setActionType(protoType)
+            .setActionType(mapToActionTypeProto(actionType))
             .setTimestamp(timestamp)
             .build();
 
@@ -67,26 +93,60 @@ public class UserActionAspect {
         log.debug("Successfully logged user action: {}", userAction);
     }
 
-    private Long evaluateSpelExpression(JoinPoint joinPoint, String spelExpression) {
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        Method method = signature.getMethod();
+    /**
+     * Builds the extractor for a method once. A bare parameter reference such as {@code #eventId}
+     * becomes a direct argument-index accessor; anything else is parsed once and evaluated against a
+     * {@link StandardEvaluationContext}, so expressions may call methods, e.g. {@code #dto.getEventId()}.
+     */
+    private EventIdExtractor createExtractor(Method method, String spelExpression) {
         String[] parameterNames = parameterNameDiscoverer.getParameterNames(method);
-        Object[] args = joinPoint.getArgs();
 
-        EvaluationContext context = new StandardEvaluationContext();
-        for (int i = 0; i < args.length; i++) {
-            if (parameterNames != null) {
-                context.setVariable(parameterNames[i], args[i]);
+        Matcher reference = PARAMETER_REFERENCE.matcher(spelExpression.strip());
+        if (reference.matches() && parameterNames != null) {
+            for (int i = 0; i < parameterNames.length; i++) {
+                if (parameterNames[i].equals(reference.group(1))) {
+                    int index = i;
+                    return args -> toLong(args[index], spelExpression);
+                }
             }
         }
 
+        Expression expression;
         try {
-            Expression expression = expressionParser.parseExpression(spelExpression);
-            return expression.getValue(context, Long.class);
+            expression = expressionParser.parseExpression(spelExpression);
         } catch (Exception e) {
-            log.error("Failed to evaluate SpEL expression '{}'", spelExpression, e);
-            return null;
+            log.error("Failed to parse SpEL expression '{}' on {}", spelExpression, method, e);
+            return args -> null;
         }
+
+        return args -> {
+            EvaluationContext context = new StandardEvaluationContext();
+            if (parameterNames != null) {
+                for (int i = 0; i < args.length; i++) {
+                    context.setVariable(parameterNames[i], args[i]);
+                }
+            }
+            try {
+                return expression.getValue(context, Long.class);
+            } catch (Exception e) {
+                log.error("Failed to evaluate SpEL expression '{}'", spelExpression, e);
+                return null;
+            }
+        };
+    }
+
+    private Long toLong(Object value, String spelExpression) {
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof String string) {
+            try {
+                return Long.parseLong(string);
+            } catch (NumberFormatException e) {
+                log.error("Argument referenced by '{}' is not a number: {}", spelExpression, string);
+            }
+        }
+        return null;
     }
 
     private ActionTypeProto mapToActionTypeProto(ActionType nativeType) {
@@ -97,4 +157,9 @@ public class UserActionAspect {
             return ActionTypeProto.UNRECOGNIZED;
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface EventIdExtractor {
+        Long extract(Object[] args);
+    }
+}
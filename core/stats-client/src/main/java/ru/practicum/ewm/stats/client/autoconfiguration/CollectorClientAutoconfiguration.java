@@ -1,30 +1,75 @@
 package ru.practicum.ewm.stats.client.autoconfiguration;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import net.devh.boot.grpc.client.inject.GrpcClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import ru.practicum.ewm.stats.client.AnalyzerClient;
+import ru.practicum.ewm.stats.client.BatchingCollectorClient;
 import ru.practicum.ewm.stats.client.CollectorClient;
 import ru.practicum.ewm.stats.client.aop.UserActionAspect;
+import ru.practicum.ewm.stats.client.balancer.AnalyzerHedgingConfigurer;
+import ru.practicum.ewm.stats.client.cache.EventRatingCache;
+import ru.practicum.ewm.stats.client.config.AnalyzerClientProperties;
+import ru.practicum.ewm.stats.client.config.CollectorClientProperties;
+import ru.practicum.ewm.stats.client.resilience.CircuitBreaker;
+import ru.practicum.ewm.stats.client.resilience.LastKnownGoodStore;
 
 @AutoConfiguration
 @ConditionalOnClass(GrpcClient.class)
+@EnableConfigurationProperties({CollectorClientProperties.class, AnalyzerClientProperties.class})
 public class CollectorClientAutoconfiguration {
 
     @Configuration
     static class ClientBeans {
         @Bean
-        public CollectorClient collectorClient() {
+        public CollectorClient collectorClient(CollectorClientProperties properties,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+            if (properties.getBatching().isEnabled()) {
+                return new BatchingCollectorClient(properties.getBatching(),
+                    meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+            }
             return new CollectorClient();
         }
 
         @Bean
-        public AnalyzerClient analyzerClient() {
-            return new AnalyzerClient();
+        public AnalyzerClient analyzerClient(AnalyzerClientProperties properties,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+            MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+            EventRatingCache ratingCache = null;
+            if (properties.getRatingCache().isEnabled()) {
+                ratingCache = new EventRatingCache(properties.getRatingCache(), registry);
+            }
+
+            AnalyzerClientProperties.CircuitBreaker breakerProperties = properties.getCircuitBreaker();
+            if (!breakerProperties.isEnabled()) {
+                return new AnalyzerClient(ratingCache, properties.isPackedResponses(), null, null, 0);
+            }
+            CircuitBreaker circuitBreaker = new CircuitBreaker("analyzer", breakerProperties.getFailureThreshold(),
+                breakerProperties.getOpenDuration(), registry);
+            LastKnownGoodStore lastKnownGood = new LastKnownGoodStore(
+                breakerProperties.getLastKnownGoodMaxEntries(), registry);
+            return new AnalyzerClient(ratingCache, properties.isPackedResponses(), circuitBreaker, lastKnownGood,
+                breakerProperties.getMaxRevalidations());
+        }
+
+        @Bean
+        public AnalyzerHedgingConfigurer analyzerHedgingConfigurer(AnalyzerClientProperties properties) {
+            return new AnalyzerHedgingConfigurer(properties.getHedging());
         }
 
         @Bean
@@ -36,9 +81,23 @@ public class CollectorClientAutoconfiguration {
     @Configuration
     static class AopConfiguration {
 
+        // The batching client only enqueues, so it needs no executor of its own in front of it
+        @Bean(destroyMethod = "shutdown")
+        @ConditionalOnProperty(prefix = "stats.client.collector.batching", name = "enabled", havingValue = "false",
+            matchIfMissing = true)
+        public ExecutorService userActionExecutor(CollectorClientProperties properties) {
+            CollectorClientProperties.Aspect aspect = properties.getAspect();
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-action-");
+            threadFactory.setDaemon(true);
+            return new ThreadPoolExecutor(aspect.getThreads(), aspect.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(aspect.getQueueCapacity()), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        }
+
         @Bean
-        public UserActionAspect userActionAspect(CollectorClient collectorClient, ParameterNameDiscoverer discoverer) {
-            return new UserActionAspect(collectorClient, discoverer);
+        public UserActionAspect userActionAspect(CollectorClient collectorClient, ParameterNameDiscoverer discoverer,
+            @Qualifier("userActionExecutor") ObjectProvider<ExecutorService> userActionExecutor) {
+            ExecutorService executor = userActionExecutor.getIfAvailable();
+            return new UserActionAspect(collectorClient, discoverer, executor != null ? executor : Runnable::run);
         }
     }
 }
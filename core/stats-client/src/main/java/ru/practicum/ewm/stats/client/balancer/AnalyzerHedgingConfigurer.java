@@ -0,0 +1,67 @@
+package ru.practicum.ewm.stats.client.balancer;
+
+import io.grpc.ManagedChannelBuilder;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.client.channelfactory.GrpcChannelConfigurer;
+import ru.practicum.ewm.stats.client.config.AnalyzerClientProperties;
+import ru.practicum.ewm.stats.grpc.RecommendationsControllerGrpc;
+
+/**
+ * Enables hedging of the cheap analyzer RPCs through the channel's default service config.
+ * <p>
+ * Only the similar-events and interactions-count lookups are hedged. User predictions are the
+ * heaviest queries of the analyzer, and duplicating them would add the most load exactly when it is
+ * already slow.
+ * <p>
+ * With {@link PeakEwmaLoadBalancerProvider#POLICY_NAME} a hedged attempt never goes to the replica of
+ * the first attempt while another one is ready. Retry throttling stops hedging once most calls fail,
+ * so that an overloaded analyzer does not receive twice the load.
+ */
+@Slf4j
+public class AnalyzerHedgingConfigurer implements GrpcChannelConfigurer {
+
+    public static final String CLIENT_NAME = "analyzer";
+
+    private static final List<String> HEDGED_METHODS = List.of(
+        RecommendationsControllerGrpc.getGetSimilarEventsMethod().getBareMethodName(),
+        RecommendationsControllerGrpc.getGetSimilarEventsPackedMethod().getBareMethodName(),
+        RecommendationsControllerGrpc.getGetInteractionsCountMethod().getBareMethodName(),
+        RecommendationsControllerGrpc.getGetInteractionsCountPackedMethod().getBareMethodName());
+
+    private final AnalyzerClientProperties.Hedging properties;
+
+    public AnalyzerHedgingConfigurer(AnalyzerClientProperties.Hedging properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void accept(ManagedChannelBuilder<?> builder, String name) {
+        if (!properties.isEnabled() || !CLIENT_NAME.equals(name)) {
+            return;
+        }
+        // gRPC parses the service config as JSON, so numbers have to be doubles and durations strings
+        Map<String, Object> hedgingPolicy = Map.of(
+            "maxAttempts", (double) properties.getMaxAttempts(),
+            "hedgingDelay", BigDecimal.valueOf(properties.getDelay().toNanos(), 9).toPlainString() + "s",
+            "nonFatalStatusCodes", List.of("UNAVAILABLE", "RESOURCE_EXHAUSTED"));
+        Map<String, Object> methodConfig = Map.of(
+            "name", HEDGED_METHODS.stream()
+                .map(method -> Map.of("service", RecommendationsControllerGrpc.SERVICE_NAME, "method", method))
+                .toList(),
+            "hedgingPolicy", hedgingPolicy);
+        Map<String, Object> retryThrottling = Map.of(
+            "maxTokens", 10.0,
+            "tokenRatio", 0.1);
+
+        builder.defaultServiceConfig(Map.of(
+                "methodConfig", List.of(methodConfig),
+                "retryThrottling", retryThrottling))
+            .enableRetry()
+            .intercept(PeakEwmaLoadBalancer.firstAttemptTracker());
+        log.info("Hedging {} calls {} after {} with up to {} attempts", name, HEDGED_METHODS, properties.getDelay(),
+            properties.getMaxAttempts());
+    }
+}
@@ -0,0 +1,292 @@
+package ru.practicum.ewm.stats.client.balancer;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Load balancer preferring the replica that is expected to answer first.
+ * <p>
+ * Every replica keeps a peak-sensitive exponentially weighted moving average of its call latency
+ * and a count of outstanding calls. A pick compares two random ready replicas and takes the one
+ * with the lower {@code ewma * (outstanding + 1)} (power of two choices), so a replica that stalls,
+ * e.g. in a GC pause or on a heavy query, piles up outstanding calls and stops being picked long
+ * before its average catches up. A slower latency sample replaces the average at once, a faster
+ * one only decays it.
+ * <p>
+ * Calls passing through {@link #firstAttemptTracker()} remember the replica of their first attempt,
+ * and a hedged or retried attempt of such a call is never sent to that replica while another one is
+ * ready.
+ * <p>
+ * All methods except the picker run in the channel's synchronization context.
+ */
+@Slf4j
+class PeakEwmaLoadBalancer extends LoadBalancer {
+
+    private static final CallOptions.Key<AtomicReference<Object>> FIRST_ATTEMPT =
+        CallOptions.Key.create("peak-ewma-first-attempt");
+    // Set by gRPC on every attempt of a call but the first
+    private static final Metadata.Key<String> PREVIOUS_ATTEMPTS =
+        Metadata.Key.of("grpc-previous-rpc-attempts", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final Helper helper;
+    private final Map<EquivalentAddressGroup, Replica> replicas = new HashMap<>();
+
+    PeakEwmaLoadBalancer(Helper helper) {
+        this.helper = helper;
+    }
+
+    /**
+     * An interceptor giving every call a slot for the replica of its first attempt.
+     */
+    static ClientInterceptor firstAttemptTracker() {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+                MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions.withOption(FIRST_ATTEMPT, new AtomicReference<>()));
+            }
+        };
+    }
+
+    @Override
+    public Status acceptResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+        List<EquivalentAddressGroup> servers = resolvedAddresses.getAddresses();
+        if (servers.isEmpty()) {
+            Status unavailable = Status.UNAVAILABLE.withDescription(
+                "Name resolver returned no addresses, attributes: " + resolvedAddresses.getAttributes());
+            handleNameResolutionError(unavailable);
+            return unavailable;
+        }
+
+        Set<EquivalentAddressGroup> current = new HashSet<>();
+        for (EquivalentAddressGroup server : servers) {
+            // Attributes may change between resolutions, the replica is identified by its addresses only
+            EquivalentAddressGroup key = new EquivalentAddressGroup(server.getAddresses());
+            current.add(key);
+            Replica existing = replicas.get(key);
+            if (existing != null) {
+                existing.subchannel.updateAddresses(List.of(server));
+                continue;
+            }
+            Subchannel subchannel = helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+                .setAddresses(server)
+                .build());
+            Replica replica = new Replica(key, subchannel);
+            replicas.put(key, replica);
+            subchannel.start(state -> onSubchannelState(replica, state));
+            subchannel.requestConnection();
+            log.debug("Added replica {}", key);
+        }
+
+        replicas.entrySet().removeIf(entry -> {
+            if (current.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().subchannel.shutdown();
+            log.debug("Removed replica {}", entry.getKey());
+            return true;
+        });
+
+        updateBalancingState();
+        return Status.OK;
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error) {
+        if (readyReplicas().isEmpty()) {
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE,
+                new FixedResultPicker(PickResult.withError(error)));
+        }
+    }
+
+    @Override
+    public void requestConnection() {
+        replicas.values().forEach(replica -> replica.subchannel.requestConnection());
+    }
+
+    @Override
+    public void shutdown() {
+        replicas.values().forEach(replica -> replica.subchannel.shutdown());
+        replicas.clear();
+    }
+
+    private void onSubchannelState(Replica replica, ConnectivityStateInfo stateInfo) {
+        if (replicas.get(replica.key) != replica) {
+            return;
+        }
+        if (stateInfo.getState() == ConnectivityState.IDLE) {
+            replica.subchannel.requestConnection();
+        }
+        replica.state = stateInfo;
+        updateBalancingState();
+    }
+
+    private void updateBalancingState() {
+        List<Replica> ready = readyReplicas();
+        if (!ready.isEmpty()) {
+            helper.updateBalancingState(ConnectivityState.READY, new Picker(ready));
+            return;
+        }
+
+        boolean connecting = false;
+        Status failure = Status.UNAVAILABLE.withDescription("No ready analyzer replicas");
+        for (Replica replica : replicas.values()) {
+            ConnectivityState state = replica.state.getState();
+            if (state == ConnectivityState.CONNECTING || state == ConnectivityState.IDLE) {
+                connecting = true;
+            } else if (state == ConnectivityState.TRANSIENT_FAILURE) {
+                failure = replica.state.getStatus();
+            }
+        }
+        if (connecting) {
+            helper.updateBalancingState(ConnectivityState.CONNECTING,
+                new FixedResultPicker(PickResult.withNoResult()));
+        } else {
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE,
+                new FixedResultPicker(PickResult.withError(failure)));
+        }
+    }
+
+    private List<Replica> readyReplicas() {
+        List<Replica> ready = new ArrayList<>();
+        for (Replica replica : replicas.values()) {
+            if (replica.state.getState() == ConnectivityState.READY) {
+                ready.add(replica);
+            }
+        }
+        return ready;
+    }
+
+    private static final class Picker extends SubchannelPicker {
+
+        private final List<Replica> ready;
+
+        Picker(List<Replica> ready) {
+            this.ready = ready;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            AtomicReference<Object> firstAttempt = args.getCallOptions().getOption(FIRST_ATTEMPT);
+            boolean laterAttempt = args.getHeaders().containsKey(PREVIOUS_ATTEMPTS);
+
+            List<Replica> candidates = ready;
+            if (laterAttempt && firstAttempt != null && ready.size() > 1 && ready.contains(firstAttempt.get())) {
+                candidates = new ArrayList<>(ready);
+                candidates.remove(firstAttempt.get());
+            }
+            Replica picked = pick(candidates);
+            if (!laterAttempt && firstAttempt != null) {
+                firstAttempt.set(picked);
+            }
+            return PickResult.withSubchannel(picked.subchannel, picked.tracerFactory);
+        }
+
+        private static Replica pick(List<Replica> candidates) {
+            if (candidates.size() == 1) {
+                return candidates.getFirst();
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(candidates.size());
+            int second = random.nextInt(candidates.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            Replica a = candidates.get(first);
+            Replica b = candidates.get(second);
+            return a.cost() <= b.cost() ? a : b;
+        }
+    }
+
+    /**
+     * A replica with its latency statistics. The statistics are updated from transport threads.
+     */
+    private static final class Replica {
+
+        // Time for a latency sample to lose 1/e of its weight
+        private static final double DECAY_NANOS = 10_000_000_000.0;
+        // Latency assumed for a failed call, so that a fast-failing replica does not attract traffic
+        private static final double FAILURE_PENALTY_NANOS = 1_000_000_000.0;
+        // Cost of a replica that has calls in flight but no latency sample yet
+        private static final double UNKNOWN_PENALTY_NANOS = 100_000_000.0;
+
+        private final EquivalentAddressGroup key;
+        private final Subchannel subchannel;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.Factory() {
+            @Override
+            public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+                outstanding.incrementAndGet();
+                long startedAt = System.nanoTime();
+                return new ClientStreamTracer() {
+                    @Override
+                    public void streamClosed(Status status) {
+                        outstanding.decrementAndGet();
+                        observe(status, System.nanoTime() - startedAt);
+                    }
+                };
+            }
+        };
+
+        private volatile ConnectivityStateInfo state = ConnectivityStateInfo.forNonError(ConnectivityState.IDLE);
+
+        // Guarded by this
+        private double ewmaNanos;
+        private long lastObservedAt = System.nanoTime();
+
+        private Replica(EquivalentAddressGroup key, Subchannel subchannel) {
+            this.key = key;
+            this.subchannel = subchannel;
+        }
+
+        double cost() {
+            int inFlight = outstanding.get();
+            double ewma;
+            synchronized (this) {
+                ewma = ewmaNanos;
+            }
+            if (ewma == 0.0 && inFlight > 0) {
+                return UNKNOWN_PENALTY_NANOS + inFlight;
+            }
+            return ewma * (inFlight + 1);
+        }
+
+        private void observe(Status status, long latencyNanos) {
+            if (status.getCode() == Status.Code.CANCELLED) {
+                // Typically the losing attempt of a hedged call, its latency says nothing
+                return;
+            }
+            double sample = status.isOk() ? latencyNanos : Math.max(latencyNanos, FAILURE_PENALTY_NANOS);
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (sample > ewmaNanos) {
+                    ewmaNanos = sample;
+                } else {
+                    double weight = Math.exp(-(now - lastObservedAt) / DECAY_NANOS);
+                    ewmaNanos = ewmaNanos * weight + sample * (1 - weight);
+                }
+                lastObservedAt = now;
+            }
+        }
+    }
+}
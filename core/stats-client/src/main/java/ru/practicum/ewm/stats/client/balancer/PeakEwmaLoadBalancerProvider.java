@@ -0,0 +1,33 @@
+package ru.practicum.ewm.stats.client.balancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+
+/**
+ * Registers {@link PeakEwmaLoadBalancer} with gRPC under the {@value #POLICY_NAME} policy name.
+ * Select it for a client with {@code grpc.client.<name>.default-load-balancing-policy}.
+ */
+public class PeakEwmaLoadBalancerProvider extends LoadBalancerProvider {
+
+    public static final String POLICY_NAME = "peak_ewma";
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        return new PeakEwmaLoadBalancer(helper);
+    }
+}
@@ -0,0 +1,173 @@
+package ru.practicum.ewm.stats.client.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.stats.client.config.AnalyzerClientProperties;
+
+/**
+ * In-process near-cache of event ratings served by the analyzer.
+ * <p>
+ * Ratings are kept for {@code ttl}. A bulk lookup returns the fresh entries and loads only the
+ * missing ones, in one analyzer call. An event being loaded by a concurrent lookup is not requested
+ * again; the later lookup waits for the load already in flight, so a burst of identical page views
+ * produces one analyzer call (stampede protection). Events the analyzer does not know are cached as
+ * unrated, so they are not requested again on every page either. Results the loader marks as not
+ * authoritative, such as fallback answers while the analyzer is unavailable, are returned but not
+ * cached.
+ * <p>
+ * Once the cache grows past {@code maxSize}, expired entries are evicted first, then arbitrary ones.
+ */
+@Slf4j
+public class EventRatingCache {
+
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final long ttlNanos;
+    private final int maxSize;
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, CompletableFuture<Double>> loading = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public EventRatingCache(AnalyzerClientProperties.RatingCache properties, MeterRegistry meterRegistry) {
+        this.ttlNanos = properties.getTtl().toNanos();
+        this.maxSize = properties.getMaxSize();
+
+        this.hits = Counter.builder("stats.analyzer.client.rating-cache.gets")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("stats.analyzer.client.rating-cache.gets")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        Gauge.builder("stats.analyzer.client.rating-cache.size", entries, Map::size)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the ratings of the given events, loading the missing ones with {@code loader}.
+     *
+     * @param eventIds The events to rate.
+     * @param loader Loads ratings of the events passed to it; events absent from its result are unrated.
+     * @return A future completed with the rated events mapped to their ratings.
+     */
+    public CompletableFuture<Map<Long, Double>> getAll(Collection<Long> eventIds,
+        Function<Collection<Long>, CompletableFuture<Loaded>> loader) {
+        long now = System.nanoTime();
+        Map<Long, Double> cached = new HashMap<>();
+        Map<Long, CompletableFuture<Double>> pending = new HashMap<>();
+        Map<Long, CompletableFuture<Double>> owned = new HashMap<>();
+
+        for (Long eventId : eventIds) {
+            Entry entry = entries.get(eventId);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.increment();
+                cached.put(eventId, entry.rating);
+                continue;
+            }
+            misses.increment();
+            CompletableFuture<Double> load = new CompletableFuture<>();
+            CompletableFuture<Double> inFlight = loading.putIfAbsent(eventId, load);
+            if (inFlight != null) {
+                pending.put(eventId, inFlight);
+            } else {
+                pending.put(eventId, load);
+                owned.put(eventId, load);
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            load(owned, loader);
+        }
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(withoutUnrated(cached));
+        }
+
+        return CompletableFuture.allOf(pending.values().toArray(CompletableFuture[]::new))
+            .thenApply(ignored -> {
+                pending.forEach((eventId, future) -> cached.put(eventId, future.join()));
+                return withoutUnrated(cached);
+            });
+    }
+
+    private void load(Map<Long, CompletableFuture<Double>> owned,
+        Function<Collection<Long>, CompletableFuture<Loaded>> loader) {
+        List<Long> eventIds = new ArrayList<>(owned.keySet());
+        log.debug("Loading ratings of {} events missing from the cache", eventIds.size());
+
+        CompletableFuture<Loaded> loaded;
+        try {
+            loaded = loader.apply(eventIds);
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+
+        loaded.whenComplete((result, ex) -> {
+            long expiresAt = System.nanoTime() + ttlNanos;
+            owned.forEach((eventId, future) -> {
+                if (ex == null) {
+                    double rating = result.ratings().getOrDefault(eventId, 0.0);
+                    if (result.authoritative()) {
+                        entries.put(eventId, new Entry(rating, expiresAt));
+                    }
+                    future.complete(rating);
+                } else {
+                    future.completeExceptionally(ex);
+                }
+                loading.remove(eventId, future);
+            });
+            if (entries.size() > maxSize) {
+                evict();
+            }
+        });
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            entries.values().removeIf(entry -> entry.expiresAt - now <= 0);
+
+            int target = (int) (maxSize * EVICTION_TARGET);
+            Iterator<Long> keys = entries.keySet().iterator();
+            while (entries.size() > target && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static Map<Long, Double> withoutUnrated(Map<Long, Double> ratings) {
+        ratings.values().removeIf(rating -> rating == 0.0);
+        return ratings;
+    }
+
+    /**
+     * Ratings returned by a loader.
+     *
+     * @param authoritative Whether the ratings are current and may be cached.
+     */
+    public record Loaded(Map<Long, Double> ratings, boolean authoritative) {
+    }
+
+    private record Entry(double rating, long expiresAt) {
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.ewm.stats.client.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "stats.client.analyzer")
+@Getter
+@Setter
+public class AnalyzerClientProperties {
+
+    /**
+     * Whether to call the unary RPC variants returning packed arrays instead of a stream of results.
+     * Requires an analyzer that serves them.
+     */
+    private boolean packedResponses = false;
+
+    private RatingCache ratingCache = new RatingCache();
+
+    private Hedging hedging = new Hedging();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    @Getter
+    @Setter
+    public static class RatingCache {
+        private boolean enabled = false;
+        private Duration ttl = Duration.ofSeconds(30);
+        private int maxSize = 10_000;
+    }
+
+    /**
+     * Hedging of the analyzer reads, which are all idempotent: when an attempt has not answered
+     * within {@code delay}, another one is sent, up to {@code maxAttempts} in total. The first
+     * response wins and the other attempts are cancelled.
+     */
+    @Getter
+    @Setter
+    public static class Hedging {
+        private boolean enabled = false;
+        private Duration delay = Duration.ofMillis(50);
+        private int maxAttempts = 2;
+    }
+
+    /**
+     * Circuit breaker around the analyzer calls, with the last known good results served while it
+     * is open or when a call fails.
+     */
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+        private boolean enabled = false;
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(10);
+        private int lastKnownGoodMaxEntries = 10_000;
+        private int maxRevalidations = 1_000;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.practicum.ewm.stats.client.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "stats.client.collector")
+@Getter
+@Setter
+public class CollectorClientProperties {
+
+    private Batching batching = new Batching();
+    private Aspect aspect = new Aspect();
+
+    @Getter
+    @Setter
+    public static class Batching {
+        private boolean enabled = false;
+        private int queueCapacity = 10_000;
+        private int maxBatchSize = 500;
+        private Duration flushInterval = Duration.ofMillis(200);
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_VIEWS_FIRST;
+        /**
+         * How long shutdown waits for the collector to acknowledge the last batches.
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Aspect {
+        /**
+         * Threads building and handing over user actions captured by {@code @LogUserAction}.
+         * Unused with batching, whose queue already takes the actions off the request thread.
+         */
+        private int threads = 1;
+        /**
+         * Captured actions waiting for a sender thread; further actions are dropped.
+         */
+        private int queueCapacity = 10_000;
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * When the queue is full, incoming views are dropped and registrations and likes
+         * evict the oldest queued view. They are only dropped if no view is left to evict.
+         */
+        DROP_VIEWS_FIRST,
+        /**
+         * When the queue is full, any incoming action is dropped.
+         */
+        DROP_NEWEST
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.ewm.stats.client.resilience;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Consecutive-failure circuit breaker.
+ * <p>
+ * After {@code failureThreshold} failed calls in a row the breaker opens and rejects calls for
+ * {@code openDuration}. Then a single probe call is let through (half-open): its success closes
+ * the breaker, its failure opens it again.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+
+        Gauge.builder("stats.client.circuit-breaker.state", state, s -> s.get().ordinal())
+            .description("0 - closed, 1 - open, 2 - half-open")
+            .tag("name", name)
+            .register(meterRegistry);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return {@code true} if the call may proceed; the caller must then report its outcome with
+     *         {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public boolean tryAcquire() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        };
+    }
+
+    /**
+     * @return {@code true} if this success closed a previously open breaker.
+     */
+    public boolean onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            log.info("Circuit breaker {} closed", name);
+            return true;
+        }
+        return false;
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN) {
+            open();
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        State previous = state.getAndSet(State.OPEN);
+        if (previous != State.OPEN) {
+            log.warn("Circuit breaker {} opened for {} ms", name, openNanos / 1_000_000);
+        }
+    }
+}
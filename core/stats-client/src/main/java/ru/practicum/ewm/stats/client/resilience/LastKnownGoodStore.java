@@ -0,0 +1,98 @@
+package ru.practicum.ewm.stats.client.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recent successful analyzer results, served while the analyzer is unavailable.
+ * <p>
+ * Results of the recommendation RPCs are kept per request. Ratings are kept per event, so that a
+ * page can be served from ratings fetched for other pages. Both are bounded LRU maps.
+ */
+public class LastKnownGoodStore {
+
+    private final Map<Object, Map<Long, Double>> results;
+    private final Map<Long, Double> ratings;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public LastKnownGoodStore(int maxEntries, MeterRegistry meterRegistry) {
+        this.results = lruMap(maxEntries);
+        this.ratings = lruMap(maxEntries);
+
+        this.hits = Counter.builder("stats.analyzer.client.last-known-good.gets")
+            .description("Analyzer calls answered from the last known good results")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("stats.analyzer.client.last-known-good.gets")
+            .description("Analyzer calls answered from the last known good results")
+            .tag("result", "miss")
+            .register(meterRegistry);
+    }
+
+    public void putResult(Object key, Map<Long, Double> result) {
+        Map<Long, Double> copy = Map.copyOf(result);
+        synchronized (results) {
+            results.put(key, copy);
+        }
+    }
+
+    /**
+     * @return The last known result for the request, or {@code null} if there is none.
+     */
+    public Map<Long, Double> getResult(Object key) {
+        Map<Long, Double> result;
+        synchronized (results) {
+            result = results.get(key);
+        }
+        (result == null ? misses : hits).increment();
+        return result;
+    }
+
+    /**
+     * Remembers the ratings of the requested events; requested events absent from {@code rated} are unrated.
+     */
+    public void putRatings(Collection<Long> eventIds, Map<Long, Double> rated) {
+        synchronized (ratings) {
+            for (Long eventId : eventIds) {
+                ratings.put(eventId, rated.getOrDefault(eventId, 0.0));
+            }
+        }
+    }
+
+    /**
+     * @return The last known ratings of the rated events among {@code eventIds}, or {@code null} if
+     *         none of them is known.
+     */
+    public Map<Long, Double> getRatings(Collection<Long> eventIds) {
+        Map<Long, Double> known = new HashMap<>();
+        boolean found = false;
+        synchronized (ratings) {
+            for (Long eventId : eventIds) {
+                Double rating = ratings.get(eventId);
+                if (rating != null) {
+                    found = true;
+                    if (rating != 0.0) {
+                        known.put(eventId, rating);
+                    }
+                }
+            }
+        }
+        (found ? hits : misses).increment();
+        return found ? known : null;
+    }
+
+    private static <K, V> Map<K, V> lruMap(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
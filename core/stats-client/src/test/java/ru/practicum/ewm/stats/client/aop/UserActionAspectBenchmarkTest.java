@@ -0,0 +1,209 @@
+package ru.practicum.ewm.stats.client.aop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ru.practicum.ewm.stats.client.CollectorClient;
+import ru.practicum.ewm.stats.grpc.ActionTypeProto;
+import ru.practicum.ewm.stats.grpc.UserActionProto;
+
+/**
+ * Micro-benchmark of the per-request overhead of {@link UserActionAspect} against the aspect it
+ * replaced, which parsed the SpEL expression and built the protobuf on every call.
+ * <p>
+ * Both run with a same-thread executor, which is what the aspect gets when the batching collector
+ * client is enabled, so the time includes building the protobuf. The timings are logged. The test
+ * only asserts the gain of the direct argument accessor used for bare parameter references; other
+ * expressions still build an evaluation context per call, so their gain is smaller and not asserted.
+ */
+@Slf4j
+class UserActionAspectBenchmarkTest {
+
+    private static final int WARMUP_CALLS = 100_000;
+    private static final int MEASURED_CALLS = 500_000;
+    private static final long USER_ID = 42;
+
+    private final List<UserActionProto> collected = new ArrayList<>();
+    private final CollectorClient collectorClient = new CollectorClient() {
+        @Override
+        public void collectUserAction(UserActionProto action) {
+            collected.add(action);
+        }
+    };
+    private final CountingCollectorClient countingClient = new CountingCollectorClient();
+    private final ParameterNameDiscoverer discoverer = new DefaultParameterNameDiscoverer();
+
+    @BeforeEach
+    void setUp() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-EWM-USER-ID", String.valueOf(USER_ID));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void bothAspectsRecordTheSameActions() {
+        EventController cached = proxy(new UserActionAspect(collectorClient, discoverer, Runnable::run));
+        EventController baseline = proxy(new BaselineUserActionAspect(collectorClient, discoverer));
+
+        cached.view(7L);
+        cached.register(new ParticipationRequest(8L));
+        baseline.view(7L);
+        baseline.register(new ParticipationRequest(8L));
+
+        assertThat(collected).hasSize(4);
+        for (int i = 0; i < 2; i++) {
+            assertThat(collected.get(i).toBuilder().clearTimestamp().build())
+                .isEqualTo(collected.get(i + 2).toBuilder().clearTimestamp().build());
+        }
+        assertThat(collected.get(0).getActionType()).isEqualTo(ActionTypeProto.ACTION_VIEW);
+        assertThat(collected.get(1).getEventId()).isEqualTo(8L);
+    }
+
+    @Test
+    void measuresTheOverheadPerRequest() {
+        EventController cached = proxy(new UserActionAspect(countingClient, discoverer, Runnable::run));
+        EventController baseline = proxy(new BaselineUserActionAspect(countingClient, discoverer));
+        EventController plain = new EventController();
+        ParticipationRequest request = new ParticipationRequest(8L);
+
+        double plainParameter = nanosPerCall(plain, controller -> controller.view(7L));
+        double baselineParameter = nanosPerCall(baseline, controller -> controller.view(7L));
+        double cachedParameter = nanosPerCall(cached, controller -> controller.view(7L));
+        double baselineProperty = nanosPerCall(baseline, controller -> controller.register(request));
+        double cachedProperty = nanosPerCall(cached, controller -> controller.register(request));
+
+        log.info("Aspect overhead per call, #eventId: baseline {} ns, cached {} ns (unadvised call {} ns)",
+            format(baselineParameter), format(cachedParameter), format(plainParameter));
+        log.info("Aspect overhead per call, #request.eventId: baseline {} ns, cached {} ns",
+            format(baselineProperty), format(cachedProperty));
+        assertThat(countingClient.count).isEqualTo(4L * (WARMUP_CALLS + MEASURED_CALLS));
+        assertThat(cachedParameter).isLessThan(baselineParameter);
+    }
+
+    private static double nanosPerCall(EventController controller, Consumer<EventController> call) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.accept(controller);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.accept(controller);
+        }
+        return (double) (System.nanoTime() - started) / MEASURED_CALLS;
+    }
+
+    private static String format(double nanos) {
+        return String.format("%.0f", nanos);
+    }
+
+    private static EventController proxy(Object aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new EventController());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    static class EventController {
+
+        @LogUserAction(ActionType.VIEW)
+        public Long view(Long eventId) {
+            return eventId;
+        }
+
+        @LogUserAction(value = ActionType.REGISTER, eventId = "#request.eventId")
+        public ParticipationRequest register(ParticipationRequest request) {
+            return request;
+        }
+    }
+
+    static class ParticipationRequest {
+
+        private final Long eventId;
+
+        ParticipationRequest(Long eventId) {
+            this.eventId = eventId;
+        }
+
+        public Long getEventId() {
+            return eventId;
+        }
+    }
+
+    private static final class CountingCollectorClient extends CollectorClient {
+
+        private long count;
+
+        @Override
+        public void collectUserAction(UserActionProto action) {
+            count++;
+        }
+    }
+
+    /**
+     * The aspect as it was before the extractors were cached, kept as the benchmark's baseline.
+     */
+    @Aspect
+    static final class BaselineUserActionAspect {
+
+        private final CollectorClient collectorClient;
+        private final ParameterNameDiscoverer parameterNameDiscoverer;
+        private final ExpressionParser expressionParser = new SpelExpressionParser();
+
+        BaselineUserActionAspect(CollectorClient collectorClient, ParameterNameDiscoverer parameterNameDiscoverer) {
+            this.collectorClient = collectorClient;
+            this.parameterNameDiscoverer = parameterNameDiscoverer;
+        }
+
+        @AfterReturning(pointcut = "@annotation(logUserAction)", argNames = "joinPoint,logUserAction")
+        public void logAction(JoinPoint joinPoint, LogUserAction logUserAction) {
+            ServletRequestAttributes attributes =
+                (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+            long userId = Long.parseLong(attributes.getRequest().getHeader("X-EWM-USER-ID"));
+
+            String[] parameterNames = parameterNameDiscoverer.getParameterNames(
+                ((MethodSignature) joinPoint.getSignature()).getMethod());
+            Object[] args = joinPoint.getArgs();
+            EvaluationContext context = new StandardEvaluationContext();
+            for (int i = 0; i < args.length; i++) {
+                context.setVariable(parameterNames[i], args[i]);
+            }
+            Long eventId = expressionParser.parseExpression(logUserAction.eventId()).getValue(context, Long.class);
+
+            Instant now = Instant.now();
+            Timestamp timestamp = Timestamp.newBuilder().setSeconds(now.getEpochSecond()).setNanos(now.getNano())
+                .build();
+            collectorClient.collectUserAction(UserActionProto.newBuilder()
+                .setUserId(userId)
+                .setEventId(eventId)
+                .setActionType(ActionTypeProto.valueOf("ACTION_" + logUserAction.value().name()))
+                .setTimestamp(timestamp)
+                .build());
+        }
+    }
+}
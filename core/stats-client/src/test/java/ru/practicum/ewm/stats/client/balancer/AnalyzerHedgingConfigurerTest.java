@@ -0,0 +1,146 @@
+package ru.practicum.ewm.stats.client.balancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.client.config.AnalyzerClientProperties;
+import ru.practicum.ewm.stats.grpc.RecommendationsControllerGrpc;
+import ru.practicum.ewm.stats.grpc.RecommendedEventsProto;
+import ru.practicum.ewm.stats.grpc.SimilarEventsRequestProto;
+import ru.practicum.ewm.stats.grpc.UserPredictionsRequestProto;
+
+/**
+ * Runs the configured channel against an in-process analyzer that never answers the first attempt
+ * of a call, so that only a hedged attempt can complete it.
+ */
+class AnalyzerHedgingConfigurerTest {
+
+    private static final long DEADLINE_MILLIS = 500;
+
+    private final StallingAnalyzer analyzer = new StallingAnalyzer();
+    private final AnalyzerClientProperties.Hedging properties = new AnalyzerClientProperties.Hedging();
+    private final String serverName = InProcessServerBuilder.generateName();
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        properties.setEnabled(true);
+        properties.setDelay(Duration.ofMillis(20));
+        server = InProcessServerBuilder.forName(serverName).addService(analyzer).build().start();
+        channel = channel(AnalyzerHedgingConfigurer.CLIENT_NAME);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        analyzer.release();
+        channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void hedgesTheLookupOfSimilarEvents() {
+        RecommendedEventsProto answer = stub().getSimilarEventsPacked(SimilarEventsRequestProto.newBuilder()
+            .setEventId(1)
+            .build());
+
+        assertThat(answer.getEventIdsList()).containsExactly(2L);
+        assertThat(analyzer.attempts("GetSimilarEventsPacked")).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotHedgeUserPredictions() {
+        assertDeadlineExceeded(() -> stub().getRecommendationsForUserPacked(UserPredictionsRequestProto.newBuilder()
+            .setUserId(1)
+            .build()));
+        assertThat(analyzer.attempts("GetRecommendationsForUserPacked")).isEqualTo(1);
+    }
+
+    @Test
+    void leavesOtherChannelsAlone() throws Exception {
+        channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        channel = channel("collector");
+
+        assertDeadlineExceeded(() -> stub().getSimilarEventsPacked(SimilarEventsRequestProto.getDefaultInstance()));
+        assertThat(analyzer.attempts("GetSimilarEventsPacked")).isEqualTo(1);
+    }
+
+    private ManagedChannel channel(String clientName) {
+        InProcessChannelBuilder builder = InProcessChannelBuilder.forName(serverName);
+        new AnalyzerHedgingConfigurer(properties).accept(builder, clientName);
+        return builder.build();
+    }
+
+    private RecommendationsControllerGrpc.RecommendationsControllerBlockingStub stub() {
+        return RecommendationsControllerGrpc.newBlockingStub(channel)
+            .withDeadlineAfter(DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertDeadlineExceeded(Runnable call) {
+        assertThatThrownBy(call::run)
+            .isInstanceOfSatisfying(StatusRuntimeException.class,
+                e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.DEADLINE_EXCEEDED));
+    }
+
+    /**
+     * Holds the first attempt of every method until the end of the test and answers the others.
+     */
+    private static final class StallingAnalyzer extends RecommendationsControllerGrpc.RecommendationsControllerImplBase {
+
+        private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        private final Queue<StreamObserver<?>> held = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void getSimilarEventsPacked(SimilarEventsRequestProto request,
+            StreamObserver<RecommendedEventsProto> responseObserver) {
+            answer("GetSimilarEventsPacked", responseObserver, request.getEventId() + 1);
+        }
+
+        @Override
+        public void getRecommendationsForUserPacked(UserPredictionsRequestProto request,
+            StreamObserver<RecommendedEventsProto> responseObserver) {
+            answer("GetRecommendationsForUserPacked", responseObserver, request.getUserId() + 1);
+        }
+
+        int attempts(String method) {
+            return attempts.computeIfAbsent(method, key -> new AtomicInteger()).get();
+        }
+
+        void release() {
+            StreamObserver<?> observer;
+            while ((observer = held.poll()) != null) {
+                observer.onError(Status.CANCELLED.asRuntimeException());
+            }
+        }
+
+        private void answer(String method, StreamObserver<RecommendedEventsProto> responseObserver, long eventId) {
+            if (attempts.computeIfAbsent(method, key -> new AtomicInteger()).incrementAndGet() == 1) {
+                held.add(responseObserver);
+                return;
+            }
+            responseObserver.onNext(RecommendedEventsProto.newBuilder()
+                .addAllEventIds(List.of(eventId))
+                .addScores(1.0)
+                .build());
+            responseObserver.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package ru.practicum.ewm.stats.client.balancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the balancer with fake subchannels and calls the picker directly. Latencies are real, so
+ * the tests only rely on the large gaps the balancer creates on purpose: failures count as one
+ * second, and outstanding calls without a latency sample as 100 ms.
+ */
+class PeakEwmaLoadBalancerTest {
+
+    private static final Metadata.Key<String> PREVIOUS_ATTEMPTS =
+        Metadata.Key.of("grpc-previous-rpc-attempts", Metadata.ASCII_STRING_MARSHALLER);
+    private static final int PICKS = 300;
+
+    private final FakeHelper helper = new FakeHelper();
+    private final Map<String, FakeSubchannel> subchannels = new HashMap<>();
+    private PeakEwmaLoadBalancer balancer;
+
+    @BeforeEach
+    void setUp() {
+        balancer = new PeakEwmaLoadBalancer(helper);
+    }
+
+    @Test
+    void avoidsAReplicaWithOutstandingCalls() {
+        start("a", "b");
+        FakeSubchannel stalled = subchannels.get("a");
+        call(stalled);
+
+        for (int i = 0; i < PICKS; i++) {
+            FakeSubchannel picked = pickAndComplete(Status.OK);
+            assertThat(picked).isNotSameAs(stalled);
+        }
+    }
+
+    @Test
+    void aSlowSampleRaisesTheAverageAtOnceAndAFastOneOnlyDecaysIt() {
+        start("a", "b");
+        FakeSubchannel failing = subchannels.get("a");
+        complete(call(failing), Status.UNAVAILABLE);
+        // One fast answer does not undo the failure's one second
+        complete(call(failing), Status.OK);
+
+        for (int i = 0; i < PICKS; i++) {
+            assertThat(pickAndComplete(Status.OK)).isNotSameAs(failing);
+        }
+    }
+
+    @Test
+    void cancelledAttemptsDoNotCountAsSamples() {
+        start("a", "b");
+        FakeSubchannel failing = subchannels.get("a");
+        FakeSubchannel healthy = subchannels.get("b");
+        complete(call(failing), Status.UNAVAILABLE);
+        // The losing attempt of a hedged call, however long it took
+        complete(call(healthy), Status.CANCELLED);
+
+        for (int i = 0; i < PICKS; i++) {
+            assertThat(pickAndComplete(Status.OK)).isSameAs(healthy);
+        }
+    }
+
+    @Test
+    void twoChoicesNeverPickTheWorstReplicaButSpreadOverTheOthers() {
+        start("a", "b", "c");
+        FakeSubchannel failing = subchannels.get("a");
+        complete(call(failing), Status.UNAVAILABLE);
+
+        Map<FakeSubchannel, Integer> picks = new HashMap<>();
+        for (int i = 0; i < PICKS; i++) {
+            picks.merge(pickAndComplete(Status.OK), 1, Integer::sum);
+        }
+        assertThat(picks).doesNotContainKey(failing);
+        assertThat(picks).containsKeys(subchannels.get("b"), subchannels.get("c"));
+    }
+
+    @Test
+    void laterAttemptsAvoidTheReplicaOfTheFirstAttempt() {
+        start("a", "b");
+        // "a" is the obvious choice, so only the exclusion can send an attempt to "b"
+        FakeSubchannel preferred = subchannels.get("a");
+        FakeSubchannel expensive = subchannels.get("b");
+        complete(call(expensive), Status.UNAVAILABLE);
+
+        for (int i = 0; i < PICKS; i++) {
+            CallOptions callOptions = trackedCallOptions();
+            FakeSubchannel first = picked(pick(new Metadata(), callOptions));
+            FakeSubchannel hedge = picked(pick(laterAttemptHeaders(), callOptions));
+
+            assertThat(first).isSameAs(preferred);
+            assertThat(hedge).isSameAs(expensive);
+        }
+    }
+
+    @Test
+    void untrackedCallsAndPlainRetriesOfThemPickByCostOnly() {
+        start("a", "b");
+        FakeSubchannel expensive = subchannels.get("b");
+        complete(call(expensive), Status.UNAVAILABLE);
+
+        assertThat(picked(pick(laterAttemptHeaders(), CallOptions.DEFAULT))).isSameAs(subchannels.get("a"));
+    }
+
+    @Test
+    void aLaterAttemptReusesTheOnlyReadyReplica() {
+        start("a", "b");
+        FakeSubchannel down = subchannels.get("b");
+        down.listener.onSubchannelState(ConnectivityStateInfo.forTransientFailure(Status.UNAVAILABLE));
+
+        CallOptions callOptions = trackedCallOptions();
+        FakeSubchannel first = picked(pick(new Metadata(), callOptions));
+        FakeSubchannel retry = picked(pick(laterAttemptHeaders(), callOptions));
+
+        assertThat(first).isSameAs(subchannels.get("a"));
+        assertThat(retry).isSameAs(first);
+    }
+
+    private void start(String... names) {
+        List<EquivalentAddressGroup> servers = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            servers.add(new EquivalentAddressGroup(new InetSocketAddress("10.0.0." + (i + 1), 9090)));
+        }
+        balancer.acceptResolvedAddresses(LoadBalancer.ResolvedAddresses.newBuilder()
+            .setAddresses(servers)
+            .build());
+        for (int i = 0; i < names.length; i++) {
+            FakeSubchannel subchannel = helper.created.get(i);
+            subchannels.put(names[i], subchannel);
+            subchannel.listener.onSubchannelState(ConnectivityStateInfo.forNonError(ConnectivityState.READY));
+        }
+        assertThat(helper.state).isEqualTo(ConnectivityState.READY);
+        // Idle unmeasured replicas cost the same and are picked at random, so every one shows up
+        while (subchannels.values().stream().anyMatch(subchannel -> subchannel.tracerFactory == null)) {
+            picked(pick(new Metadata(), CallOptions.DEFAULT));
+        }
+    }
+
+    private LoadBalancer.PickResult pick(Metadata headers, CallOptions callOptions) {
+        return helper.picker.pickSubchannel(new FakePickArgs(headers, callOptions));
+    }
+
+    private FakeSubchannel pickAndComplete(Status status) {
+        LoadBalancer.PickResult result = pick(new Metadata(), CallOptions.DEFAULT);
+        FakeSubchannel picked = picked(result);
+        complete(call(picked), status);
+        return picked;
+    }
+
+    private static ClientStreamTracer call(FakeSubchannel subchannel) {
+        ClientStreamTracer.StreamInfo info = ClientStreamTracer.StreamInfo.newBuilder().build();
+        return subchannel.tracerFactory.newClientStreamTracer(info, new Metadata());
+    }
+
+    private static void complete(ClientStreamTracer tracer, Status status) {
+        tracer.streamClosed(status);
+    }
+
+    private static FakeSubchannel picked(LoadBalancer.PickResult result) {
+        assertThat(result.getStatus().isOk()).isTrue();
+        FakeSubchannel subchannel = (FakeSubchannel) result.getSubchannel();
+        // Streams of a replica are traced by its own factory, kept to open calls on it directly
+        subchannel.tracerFactory = result.getStreamTracerFactory();
+        return subchannel;
+    }
+
+    private static Metadata laterAttemptHeaders() {
+        Metadata headers = new Metadata();
+        headers.put(PREVIOUS_ATTEMPTS, "1");
+        return headers;
+    }
+
+    private static CallOptions trackedCallOptions() {
+        CallOptions[] tracked = new CallOptions[1];
+        Channel capturing = new Channel() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method,
+                CallOptions callOptions) {
+                tracked[0] = callOptions;
+                return null;
+            }
+
+            @Override
+            public String authority() {
+                return "analyzer";
+            }
+        };
+        PeakEwmaLoadBalancer.firstAttemptTracker().interceptCall(null, CallOptions.DEFAULT, capturing);
+        return tracked[0];
+    }
+
+    private static final class FakeHelper extends LoadBalancer.Helper {
+
+        private final List<FakeSubchannel> created = new ArrayList<>();
+        private ConnectivityState state;
+        private LoadBalancer.SubchannelPicker picker;
+
+        @Override
+        public LoadBalancer.Subchannel createSubchannel(LoadBalancer.CreateSubchannelArgs args) {
+            FakeSubchannel subchannel = new FakeSubchannel(args.getAddresses());
+            created.add(subchannel);
+            return subchannel;
+        }
+
+        @Override
+        public void updateBalancingState(ConnectivityState newState, LoadBalancer.SubchannelPicker newPicker) {
+            state = newState;
+            picker = newPicker;
+        }
+
+        @Override
+        public ManagedChannel createOobChannel(EquivalentAddressGroup address, String authority) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getAuthority() {
+            return "analyzer";
+        }
+    }
+
+    private static final class FakeSubchannel extends LoadBalancer.Subchannel {
+
+        private List<EquivalentAddressGroup> addresses;
+        private LoadBalancer.SubchannelStateListener listener;
+        private ClientStreamTracer.Factory tracerFactory;
+
+        private FakeSubchannel(List<EquivalentAddressGroup> addresses) {
+            this.addresses = addresses;
+        }
+
+        @Override
+        public void start(LoadBalancer.SubchannelStateListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void updateAddresses(List<EquivalentAddressGroup> addresses) {
+            this.addresses = addresses;
+        }
+
+        @Override
+        public List<EquivalentAddressGroup> getAllAddresses() {
+            return addresses;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void requestConnection() {
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return Attributes.EMPTY;
+        }
+    }
+
+    private static final class FakePickArgs extends LoadBalancer.PickSubchannelArgs {
+
+        private final Metadata headers;
+        private final CallOptions callOptions;
+
+        private FakePickArgs(Metadata headers, CallOptions callOptions) {
+            this.headers = headers;
+            this.callOptions = callOptions;
+        }
+
+        @Override
+        public CallOptions getCallOptions() {
+            return callOptions;
+        }
+
+        @Override
+        public Metadata getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public MethodDescriptor<?, ?> getMethodDescriptor() {
+            return null;
+        }
+    }
+}